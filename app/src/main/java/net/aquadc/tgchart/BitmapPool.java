@@ -0,0 +1,103 @@
+package net.aquadc.tgchart;
+
+import android.graphics.Bitmap;
+import androidx.annotation.MainThread;
+
+import java.util.Arrays;
+
+/**
+ * A few bitmaps reused for offscreen rendering.
+ * A bitmap drawn by a recent frame may still be read by the render thread from that frame's display list,
+ * so it's not given out again until two more frames were recorded: by then the one which used it has been rendered.
+ */
+@MainThread final class BitmapPool {
+
+    private static final int NEVER = Integer.MIN_VALUE;
+
+    private final Bitmap[] bitmaps;
+    private final boolean[] taken;
+    private final int[] drawnAt; // number of the last draw which has drawn a bitmap
+    private int draws;
+
+    BitmapPool(int capacity) {
+        bitmaps = new Bitmap[capacity];
+        taken = new boolean[capacity];
+        drawnAt = new int[capacity];
+        Arrays.fill(drawnAt, NEVER);
+    }
+
+    /**
+     * Call it on every draw, before {@link #drawn}.
+     */
+    void nextDraw() {
+        draws++;
+    }
+
+    /**
+     * Marks the bitmap as drawn by the frame being recorded.
+     */
+    void drawn(Bitmap bitmap) {
+        drawnAt[indexOf(bitmap)] = draws;
+    }
+
+    /**
+     * @return a bitmap of the given size, with unspecified contents,
+     *         or null if all of them are taken or drawn recently, see {@link #awaitsDraws}
+     */
+    Bitmap take(int width, int height) {
+        int target = -1;
+        for (int i = 0; i < bitmaps.length; i++) {
+            if (taken[i]) continue;
+            if (bitmaps[i] == null) {
+                if (target < 0) target = i;
+            } else if (drawnAt[i] == NEVER || draws - drawnAt[i] >= 2) {
+                target = i; // prefer an existing one
+                break;
+            }
+        }
+        if (target < 0) return null;
+
+        Bitmap bitmap = bitmaps[target];
+        if (bitmap == null || bitmap.getWidth() != width || bitmap.getHeight() != height) {
+            bitmaps[target] = bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            drawnAt[target] = NEVER;
+        }
+        taken[target] = true;
+        return bitmap;
+    }
+
+    /**
+     * @return whether a bitmap which is not taken is still shown by recent frames,
+     *         so {@link #take} will succeed after a draw or two. Otherwise, it's worth trying again after {@link #give}
+     */
+    boolean awaitsDraws() {
+        for (int i = 0; i < bitmaps.length; i++) {
+            if (!taken[i] && bitmaps[i] != null && drawnAt[i] != NEVER && draws - drawnAt[i] < 2) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gives the bitmap back. It may be still shown by recent frames, so it won't be taken until they're gone.
+     */
+    void give(Bitmap bitmap) {
+        taken[indexOf(bitmap)] = false;
+    }
+
+    /**
+     * Drops all bitmaps, including taken ones.
+     */
+    void clear() {
+        Arrays.fill(bitmaps, null);
+        Arrays.fill(taken, false);
+        Arrays.fill(drawnAt, NEVER);
+    }
+
+    private int indexOf(Bitmap bitmap) {
+        for (int i = 0; i < bitmaps.length; i++) {
+            if (bitmaps[i] == bitmap) return i;
+        }
+        throw new IllegalArgumentException("not from this pool: " + bitmap);
+    }
+
+}
@@ -8,11 +8,14 @@ import android.graphics.Color;
 import android.graphics.Paint;
 import android.text.TextPaint;
 import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
 import android.view.View;
 import android.widget.Toast;
 import androidx.annotation.ColorInt;
 import net.aquadc.tgchart.card.RoundRectDrawableWithShadow;
 
+import java.util.Arrays;
+
 
 public final class ChartBubbleView extends View implements View.OnClickListener {
 
@@ -31,6 +34,18 @@ public final class ChartBubbleView extends View implements View.OnClickListener
         paint = new Paint(Paint.ANTI_ALIAS_FLAG);
         textPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
         bubbleInsets = (int) (16 * dp);
+        scaleDetector = new ScaleGestureDetector(context, new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+            @Override public boolean onScaleBegin(ScaleGestureDetector detector) {
+                // the chart may lag behind the bar by a frame, e. g. while flinging, so start from the bar's range
+                zoomStart = rangeBar.getSelectionStart();
+                zoomEnd = rangeBar.getSelectionEnd();
+                return true;
+            }
+            @Override public boolean onScale(ScaleGestureDetector detector) {
+                zoom(detector.getFocusX(), detector.getScaleFactor());
+                return true;
+            }
+        });
 
         setAlpha(0f);
         setOnClickListener(this);
@@ -68,6 +83,9 @@ public final class ChartBubbleView extends View implements View.OnClickListener
         this.yValueTextSize = yValue;
         this.yLabelTextSize = yLabel;
         this.yValueHSpacing = yValueHSpacing;
+        preparedXIndex = -1;
+        nameWidths = null;
+        widthIndices = null;
         invalidate();
     }
 
@@ -97,14 +115,28 @@ public final class ChartBubbleView extends View implements View.OnClickListener
 
     private ChartDrawable chart;
     public void setChart(ChartDrawable chart) {
+        if (this.chart != null) this.chart.setFrameListener(null);
         this.chart = chart;
+        if (chart != null) chart.setFrameListener(onFrame);
+        preparedXIndex = -1;
+        nameWidths = null;
+        widthIndices = null;
     }
 
-    private ChartDrawable.ValueFormatter xFormatter;
-    private ChartDrawable.ValueFormatter yFormatter;
-    public void setFormatters(ChartDrawable.ValueFormatter x, ChartDrawable.ValueFormatter y) {
+    // points move during Y range and visibility animations, follow them. Values stay the same, see prepareBubble()
+    private final Runnable onFrame = new Runnable() {
+        @Override public void run() {
+            if (currentXIndex != -1) invalidate();
+        }
+    };
+
+    private ValueFormatter xFormatter;
+    private ValueFormatter yFormatter;
+    public void setFormatters(ValueFormatter x, ValueFormatter y) {
         this.xFormatter = x;
         this.yFormatter = y;
+        preparedXIndex = -1;
+        widthIndices = null;
     }
 
     @ColorInt private int guidelineColour;
@@ -123,15 +155,57 @@ public final class ChartBubbleView extends View implements View.OnClickListener
         invalidate();
     }
 
+    private final ScaleGestureDetector scaleDetector;
+    private RangeBar rangeBar;
+    private boolean zooming;
+    private double zoomStart, zoomEnd;
+    /**
+     * Enables pinch-to-zoom. Zoomed ranges are applied to the bar, it should tell the chart.
+     */
+    public void setRangeBar(RangeBar rangeBar) {
+        this.rangeBar = rangeBar;
+    }
+    private void zoom(float focusX, float scaleFactor) {
+        int length = chart.data.x.values.size();
+        double minWidth = Math.min(1, 2.0 / Math.max(1, length - 1)); // down to a couple of points
+        double width = zoomEnd - zoomStart;
+        double focus = zoomStart + width * focusX / getWidth(); // this point stays under fingers
+        double newWidth = Math.max(minWidth, Math.min(1, width / scaleFactor));
+        double newStart = Math.max(0, Math.min(1 - newWidth, focus - (focus - zoomStart) * (newWidth / width)));
+        zoomStart = newStart;
+        zoomEnd = Math.min(1, newStart + newWidth);
+        rangeBar.setSelectedRange(zoomStart, zoomEnd);
+    }
+
     @Override public boolean onTouchEvent(MotionEvent event) {
         if (chart == null) return false;
 
+        if (rangeBar != null) {
+            scaleDetector.onTouchEvent(event);
+            int action = event.getActionMasked();
+            if (!zooming && event.getPointerCount() > 1) {
+                zooming = true;
+                // the second finger means zooming, forget the press and hide the bubble
+                MotionEvent cancel = MotionEvent.obtain(event);
+                cancel.setAction(MotionEvent.ACTION_CANCEL);
+                super.onTouchEvent(cancel);
+                cancel.recycle();
+            }
+            if (zooming) {
+                if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) zooming = false;
+                return true;
+            }
+        }
+
         switch (event.getActionMasked()) {
             case MotionEvent.ACTION_DOWN:
             case MotionEvent.ACTION_MOVE:
             case MotionEvent.ACTION_HOVER_MOVE:
-                currentXIndex = chart.getIndexAt(event.getX());
-                invalidate();
+                int index = chart.getIndexAt(event.getX());
+                if (index != currentXIndex) { // moves within the same point change nothing
+                    currentXIndex = index;
+                    invalidate();
+                }
         }
 
         return super.onTouchEvent(event); // handle 'pressed' state
@@ -145,38 +219,103 @@ public final class ChartBubbleView extends View implements View.OnClickListener
         }
     }
 
-    private double[] yValues;
-    private String[] formattedYValues; // TODO: use a single SB and slices instead
-    private int[] lengths;
+    // formatted values are slices of a single buffer: X value first, then Y values, empty for invisible columns
+    private final StringBuilder sb = new StringBuilder();
+    private char[] chars = new char[64];
+    private int[] starts; // [0] is X value, [1 + column] are Y values, [1 + columns.length] is the end
+    private double[] yValues, preparedYValues;
+    private int preparedXIndex = -1;
+    private double preparedXValue;
+    private float xValueWidth;
+    private int[] lengths; // column widths, max of value and name
+    private float[] nameWidths; // depend only on text size
+    // value widths of recently shown points, per (column, index), direct-mapped by index;
+    // column == columns.length is X. Scrubbing back and forth doesn't measure them again
+    private static final int WIDTH_SLOTS = 64;
+    private int[] widthIndices;
+    private double[] widthValues;
+    private float[] widths;
     private float[] yPositions;
-    private void drawBubble(Canvas canvas) {
-        int width = getWidth() - getPaddingLeft() - getPaddingRight();
-        int height = getHeight() - getPaddingTop() - getPaddingBottom();
 
-        StringBuilder sb = new StringBuilder();
-
-        // prepare data
+    /**
+     * Formats and measures everything for the current point, unless it was done for the same point and values.
+     */
+    private void prepareBubble() {
         double xValue = chart.getXValueAt(currentXIndex);
-        xFormatter.formatValueInto(sb, xValue);
-        String formattedXValue = sb.toString();
-        sb.setLength(0);
-
         yValues = chart.getYValuesAt(currentXIndex, yValues);
+        double[] yValues = this.yValues;
         int yValueCount = yValues.length;
-        if (formattedYValues == null || formattedYValues.length != yValueCount) {
-            formattedYValues = new String[yValueCount];
+        if (preparedXIndex == currentXIndex && preparedXValue == xValue && Arrays.equals(preparedYValues, yValues)) {
+            return; // nothing changed, e. g. the same point is shown during Y animation
+        }
+
+        Chart.Column[] columns = chart.data.columns;
+        if (starts == null || starts.length != yValueCount + 2) {
+            starts = new int[yValueCount + 2];
             lengths = new int[yValueCount];
+            preparedYValues = new double[yValueCount];
+        }
+        if (nameWidths == null) {
+            nameWidths = new float[yValueCount];
+            textPaint.setTextSize(yLabelTextSize);
+            for (int i = 0; i < yValueCount; i++) {
+                nameWidths[i] = textPaint.measureText(columns[i].name);
+            }
         }
+
+        // format
+        StringBuilder sb = this.sb;
+        sb.setLength(0);
+        xFormatter.formatValueInto(sb, xValue);
         for (int i = 0; i < yValueCount; i++) {
+            starts[1 + i] = sb.length();
             double yValue = yValues[i];
-            if (Double.isNaN(yValue)) {
-                formattedYValues[i] = null;
-            } else {
-                yFormatter.formatValueInto(sb, yValue);
-                formattedYValues[i] = sb.toString();
-                sb.setLength(0);
-            }
+            if (!Double.isNaN(yValue)) yFormatter.formatValueInto(sb, yValue);
+        }
+        int end = starts[1 + yValueCount] = sb.length();
+        if (chars.length < end) chars = new char[Math.max(end, 2 * chars.length)];
+        sb.getChars(0, end, chars, 0);
+
+        // measure
+        if (widthIndices == null || widthIndices.length != (yValueCount + 1) * WIDTH_SLOTS) {
+            widthIndices = new int[(yValueCount + 1) * WIDTH_SLOTS];
+            Arrays.fill(widthIndices, -1);
+            widthValues = new double[widthIndices.length];
+            widths = new float[widthIndices.length];
+        }
+        xValueWidth = measure(yValueCount, xValue, 0, xValueTextSize);
+        for (int i = 0; i < yValueCount; i++) {
+            int valueLen = (int) measure(i, yValues[i], 1 + i, yValueTextSize);
+            lengths[i] = Math.max(valueLen, (int) nameWidths[i]);
+        }
+
+        preparedXIndex = currentXIndex;
+        preparedXValue = xValue;
+        System.arraycopy(yValues, 0, preparedYValues, 0, yValueCount);
+    }
+
+    /**
+     * @return width of a formatted value at {@link #currentXIndex}, measured or cached
+     */
+    private float measure(int column, double value, int slice, float textSize) {
+        int slot = column * WIDTH_SLOTS + (currentXIndex & (WIDTH_SLOTS - 1));
+        // compare bits: NaN is a valid (empty) value
+        if (widthIndices[slot] != currentXIndex || Double.doubleToLongBits(widthValues[slot]) != Double.doubleToLongBits(value)) {
+            textPaint.setTextSize(textSize);
+            widths[slot] = textPaint.measureText(chars, starts[slice], starts[slice + 1] - starts[slice]);
+            widthIndices[slot] = currentXIndex;
+            widthValues[slot] = value;
         }
+        return widths[slot];
+    }
+
+    private void drawBubble(Canvas canvas) {
+        int width = getWidth() - getPaddingLeft() - getPaddingRight();
+        int height = getHeight() - getPaddingTop() - getPaddingBottom();
+
+        prepareBubble();
+        double[] yValues = this.yValues;
+        int[] starts = this.starts;
         yPositions = chart.getYPositionsAt(currentXIndex, yPositions);
 
         int xValueHeight = (int) (1.2f * xValueTextSize);
@@ -192,19 +331,14 @@ public final class ChartBubbleView extends View implements View.OnClickListener
         paint.setStrokeWidth(guidelineThickness);
         canvas.drawLine(xPos, bottom, xPos, height, paint);
 
-        // measure
-        setupTextPaint(xValueTextSize, xValueColour);
+        // measured in advance
         int balloonWidth = 0;
         Chart.Column[] columns = chart.data.columns;
         for (int i = 0; i < columns.length; i++) {
             float yPosition = yPositions[i];
             if (!Float.isNaN(yPosition)) { // i. e. the col is visible
                 Chart.Column column = columns[i];
-                setupTextPaint(yValueTextSize, column.colour);
-                int valueLen = (int) textPaint.measureText(formattedYValues[i]);
-                setupTextPaint(yLabelTextSize, column.colour);
-                int labelLen = (int) textPaint.measureText(column.name);
-                balloonWidth += (lengths[i] = Math.max(valueLen, labelLen)) + yValueHSpacing;
+                balloonWidth += lengths[i] + yValueHSpacing;
 
                 // draw dots
                 paint.setColor(bg.getColor());
@@ -218,8 +352,7 @@ public final class ChartBubbleView extends View implements View.OnClickListener
             }
         }
         balloonWidth -= yValueHSpacing; // last spacing is odd
-        setupTextPaint(xValueTextSize, xValueColour);
-        balloonWidth = Math.max(balloonWidth, (int) textPaint.measureText(formattedXValue));
+        balloonWidth = Math.max(balloonWidth, (int) xValueWidth);
 
         // layout
         int leftMin = bubbleInsets * 9 / 10;
@@ -242,14 +375,13 @@ public final class ChartBubbleView extends View implements View.OnClickListener
         bg.draw(canvas);
 
         setupTextPaint(xValueTextSize, xValueColour);
-        canvas.drawText(formattedXValue, left, top + xValueHeight, textPaint);
+        canvas.drawText(chars, 0, starts[1], left, top + xValueHeight, textPaint);
         int currentLeft = left;
         for (int i = 0; i < columns.length; i++) {
-            String formattedYValue = formattedYValues[i];
-            if (formattedYValue != null) { // the col is visible
+            if (!Double.isNaN(yValues[i])) { // the col is visible
                 Chart.Column column = columns[i];
                 setupTextPaint(yValueTextSize, column.colour);
-                canvas.drawText(formattedYValue, currentLeft, top + xValueHeight + yValueHeight, textPaint);
+                canvas.drawText(chars, starts[1 + i], starts[2 + i] - starts[1 + i], currentLeft, top + xValueHeight + yValueHeight, textPaint);
                 setupTextPaint(yLabelTextSize, column.colour);
                 canvas.drawText(column.name, currentLeft, top + xValueHeight + yValueHeight + yLabelHeight, textPaint);
                 currentLeft += lengths[i] + yValueHSpacing;
@@ -1,21 +1,16 @@
 package net.aquadc.tgchart;
 
-import android.animation.Animator;
-import android.animation.AnimatorListenerAdapter;
-import android.animation.AnimatorSet;
-import android.animation.ObjectAnimator;
 import android.animation.TimeInterpolator;
-import android.animation.ValueAnimator;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.ColorFilter;
-import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Path;
 import android.graphics.PixelFormat;
 import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
 import android.text.TextPaint;
+import android.view.animation.AccelerateDecelerateInterpolator;
 import android.view.animation.DecelerateInterpolator;
 import androidx.annotation.ColorInt;
 import androidx.annotation.NonNull;
@@ -26,16 +21,21 @@ import java.util.Arrays;
 
 public final class ChartDrawable extends Drawable {
 
-    private static final boolean DEBUG = false;
-
     private static final int Y_ANIM_DURATION = 250;
     private static final int X_ANIM_DURATION = 200;
     private static final TimeInterpolator INTERPOLATOR = new DecelerateInterpolator();
+    private static final TimeInterpolator FADE_INTERPOLATOR = new AccelerateDecelerateInterpolator();
 
     final Chart data; // package-private shortcut for ChartExtrasView
 
-    private Path[] paths;
-    private Matrix matrix;
+    private final ChartGeometry geometry; // shared with other drawables showing the same chart
+    private SeriesRenderer seriesRenderer; // non-null if series are rendered in background
+    private final PictureLayer xLabelLayer, guidelineLayer, seriesLayer; // drawn from bottom to top
+
+    // scratch objects: filled, drawn, and rewound within a single draw()
+    private final SeriesSnapshot series;
+    private final Path path = new Path();
+    private final double[] yBounds = new double[2];
 
     private final float chartThickness;
 
@@ -46,36 +46,84 @@ public final class ChartDrawable extends Drawable {
     private ValueFormatter yValueFormatter;
 
     private final Paint paint;
-    private boolean dirtyBounds;
 
     private double minTop = -Double.MAX_VALUE;
     private double maxBottom = Double.MAX_VALUE;
 
     private static final int APPEARING = 1 << 16;
     private final int[] visibilities;
-    private ValueAnimator[] visibilityAnimations;
-    private ValueAnimator.AnimatorUpdateListener[] visibilityListeners;
 
-    private int firstVisibleXPerMille;
-    private int firstInvisibleXPerMille;
+    // all animations run on a single frame clock and end up in a single invalidation per frame
+    private final FrameAnimator animator;
+    private final FrameAnimator.Channel[] visibilityChannels;
+    private final FrameAnimator.Channel yMinChannel, yMaxChannel, yProgressChannel, textAlphaChannel;
+
+    private double visibleStart; // [0; 1], fractions of the whole X range
+    private double visibleEnd;
 
     @ColorInt private int guidelineColour = Color.TRANSPARENT;
 
-    public ChartDrawable(Chart data, float chartThickness) { // TODO: sampling!
+    public ChartDrawable(Chart data, float chartThickness) {
         this.data = data;
         this.chartThickness = chartThickness;
         this.paint = new Paint(Paint.ANTI_ALIAS_FLAG);
         this.paint.setStyle(Paint.Style.STROKE);
-        this.dirtyBounds = true;
+        this.geometry = ChartGeometry.acquire(data);
 
         int length = data.columns.length;
+        this.xLabelLayer = new PictureLayer(6);
+        this.guidelineLayer = new PictureLayer(8);
+        this.seriesLayer = new PictureLayer(9 + length);
+        this.series = new SeriesSnapshot(data);
         this.visibilities = new int[length];
         for (int i = 0; i < length; i++) {
             visibilities[i] = (byte) 255;
         }
 
-        this.firstVisibleXPerMille = 0;
-        this.firstInvisibleXPerMille = 1000;
+        this.animator = new FrameAnimator(new Runnable() {
+            @Override public void run() {
+                onAnimationFrame();
+            }
+        });
+        this.visibilityChannels = new FrameAnimator.Channel[length];
+        for (int i = 0; i < length; i++) {
+            visibilityChannels[i] = animator.channel(255, Y_ANIM_DURATION, FADE_INTERPOLATOR);
+        }
+        this.yMinChannel = animator.channel(Double.NaN, Y_ANIM_DURATION, INTERPOLATOR);
+        this.yMaxChannel = animator.channel(Double.NaN, Y_ANIM_DURATION, INTERPOLATOR);
+        this.yProgressChannel = animator.channel(0, Y_ANIM_DURATION, INTERPOLATOR);
+        this.textAlphaChannel = animator.channel(255, X_ANIM_DURATION, FADE_INTERPOLATOR);
+
+        this.visibleStart = 0;
+        this.visibleEnd = 1;
+    }
+    /**
+     * Releases geometry shared with other drawables of the same chart. Call it when the drawable is not needed anymore.
+     */
+    public void release() {
+        geometry.release();
+        animator.cancel();
+        if (seriesRenderer != null) seriesRenderer.release();
+    }
+    /**
+     * Makes series to be rendered into bitmaps on a background thread, while guidelines and numbers are still drawn in place.
+     * Series may lag behind by a frame or two, but huge charts don't block the main thread.
+     * Points are picked on the main thread, so data may be appended to or rolled up meanwhile.
+     */
+    public void setRenderSeriesInBackground(boolean whether) {
+        if (whether == (seriesRenderer != null)) return;
+        if (whether) {
+            seriesRenderer = new SeriesRenderer(data, geometry, chartThickness, new Runnable() {
+                @Override public void run() {
+                    invalidateSelf();
+                }
+            });
+            seriesRenderer.bitmapPaint.setColorFilter(paint.getColorFilter());
+        } else {
+            seriesRenderer.release();
+            seriesRenderer = null;
+        }
+        invalidateSelf();
     }
     public void configureGuidelines(float guidelineThickness, float textIndent, float textSize,
                                     ValueFormatter xValueFormatter, ValueFormatter yValueFormatter) {
@@ -84,6 +132,8 @@ public final class ChartDrawable extends Drawable {
         this.textSize = textSize;
         this.xValueFormatter = xValueFormatter;
         this.yValueFormatter = yValueFormatter;
+        if (labels != null) labels.clear();
+        invalidateLayers();
         invalidateSelf();
     }
     /**
@@ -99,12 +149,8 @@ public final class ChartDrawable extends Drawable {
         invalidateSelf();
     }
 
-    private float[] normalized;
-
     private double prevYMin, prevYMax, targetYMin, targetYMax, yMin, yMax, yDiff = Double.NaN; // shared with Bubble overlay
     private int yAnimProgress = 0;
-    private AnimatorSet yAnimator;
-    private ValueAnimator.AnimatorUpdateListener updateYMin, updateYMax, updateYProgress;
     private void animYDiff(double toYMin, double toYMax) {
         if (targetYMin == toYMin && targetYMax == toYMax) {
             return;
@@ -112,65 +158,49 @@ public final class ChartDrawable extends Drawable {
         targetYMin = toYMin;
         targetYMax = toYMax;
 
-        if (yAnimator == null || !yAnimator.isRunning()) {
+        if (!yProgressChannel.isRunning()) {
             prevYMin = yMin;
             prevYMax = yMax;
-        } else {
-            yAnimator.cancel();
+        } // else keep fading out guidelines which were visible before the running animation
+        yMinChannel.animateTo(toYMin);
+        yMaxChannel.animateTo(toYMax);
+        yProgressChannel.set(0);
+        yProgressChannel.animateTo(255);
+    }
+    private void onAnimationFrame() {
+        double yMin = yMinChannel.value(), yMax = yMaxChannel.value();
+        if (yMin == yMin && yMax == yMax) { // not before the first frame
+            this.yMin = yMin;
+            this.yMax = yMax;
+            yDiff = yMax - yMin;
         }
-        if (updateYMin == null) {
-            updateYMin = new ValueAnimator.AnimatorUpdateListener() {
-                @Override public void onAnimationUpdate(ValueAnimator animation) {
-                    yMin = (Double) animation.getAnimatedValue();
-                    yDiff = yMax - yMin;
-                    invalidateSelf();
-                }
-            };
-            updateYMax = new ValueAnimator.AnimatorUpdateListener() {
-                @Override public void onAnimationUpdate(ValueAnimator animation) {
-                    yMax = (Double) animation.getAnimatedValue();
-                    yDiff = yMax - yMin;
-                    invalidateSelf();
-                }
-            };
-            updateYProgress = new ValueAnimator.AnimatorUpdateListener() {
-                @Override public void onAnimationUpdate(ValueAnimator animation) {
-                    yAnimProgress = (Integer) animation.getAnimatedValue();
-                }
-            };
+        yAnimProgress = (int) yProgressChannel.value();
+        animatedTextAlpha = (int) textAlphaChannel.value();
+        for (int i = 0; i < visibilities.length; i++) {
+            int prev = visibilities[i] & 0xFF;
+            int next = (byte) (int) visibilityChannels[i].value();
+            if (next > prev) next |= APPEARING;
+            visibilities[i] = next;
         }
-
-        ValueAnimator yMinAnim = ObjectAnimator.ofObject(DoubleEvaluator.INSTANCE, yMin, toYMin);
-        yMinAnim.addUpdateListener(updateYMin);
-
-        ValueAnimator yMaxAnim = ObjectAnimator.ofObject(DoubleEvaluator.INSTANCE, yMax, toYMax);
-        yMaxAnim.addUpdateListener(updateYMax);
-
-        ValueAnimator yProgressAnim = ObjectAnimator.ofInt(0, 255);
-        yProgressAnim.addUpdateListener(updateYProgress);
-
-        yAnimator = new AnimatorSet().setDuration(Y_ANIM_DURATION);
-        yAnimator.setInterpolator(INTERPOLATOR);
-        yAnimator.playTogether(yMinAnim, yMaxAnim, yProgressAnim);
-        yAnimator.start();
+        invalidateSelf();
     }
     @Override public void draw(@NonNull Canvas canvas) {
-        if (dirtyBounds) normalize();
-
-        long nanos = 0;
-        if (DEBUG) nanos = System.nanoTime();
+        if (data.x.values.size() == 0) return; // nothing to draw yet, e. g. a fresh RollingChart
+        begin(DrawMetrics.TOTAL);
+        begin(DrawMetrics.NORMALIZE);
+        geometry.normalizeIfNeeded();
+        end(DrawMetrics.NORMALIZE);
 
         // common preparations
+        begin(DrawMetrics.WINDOW);
         int width = width();
-        float[] normalized = this.normalized;
+        float xStart = (float) visibleStart; // [0; 1] currently visible
+        int firstVisibleIdx = geometry.indexOfClosest(xStart);
+        if (geometry.normalizedX(firstVisibleIdx) > xStart && firstVisibleIdx > 0) firstVisibleIdx--; // draw first point off-screen
 
-        int length = data.x.values.length;
-        float xStart = width * firstVisibleXPerMille / 1000f; // [0; width] currently visible
-        int firstVisibleIdx = indexOfClosest(normalized, 0, length, xStart);
-        if (normalized[firstVisibleIdx] > xStart && firstVisibleIdx > 0) firstVisibleIdx--; // draw first point off-screen
-
-        float xEnd = width * firstInvisibleXPerMille / 1000f;
-        int lastVisibleIdx = indexOfClosest(normalized, 0, length, xEnd);
+        float xEnd = (float) visibleEnd;
+        int lastVisibleIdx = geometry.indexOfClosest(xEnd);
+        end(DrawMetrics.WINDOW);
 
         Chart.Column[] columns = data.columns;
         int colCount = columns.length;
@@ -188,52 +218,14 @@ public final class ChartDrawable extends Drawable {
             }
         }*/
 
-        // let's find visible window limits first
-        double _yMin = maxBottom;
-        double _yMax = minTop;
-        boolean visible = false;
-        for (int ci = 0; ci < colCount; ci++) {
-            int visibility = visibilities[ci];
-            if (visibility != 0) {
-                int yi = (ci + 1) * length;
-                yi += firstVisibleIdx; // skip left invisible part
-                // paths are cool & shit, but cannot be drawn partially, so let's fill 'em on demand
-                // drawLine was OK but can't draw good line joins
-
-                int xi = firstVisibleIdx;
-                Path path = paths[ci];
-
-                float firstX = normalized[xi++], firstY = normalized[yi++];
-                float colMinY = firstY, colMaxY = firstY;
-                int minYIdx = firstVisibleIdx, maxYIdx = firstVisibleIdx;
-                if (Float.isNaN(firstX)) {
-                    path.moveTo(0f, 0f);
-                    path.lineTo(width(), 0f);
-                } else {
-                    path.moveTo(firstX, firstY);
-                    while (xi <= lastVisibleIdx) {
-                        float x = normalized[xi], y = normalized[yi];
-                        if (y < colMinY) {
-                            colMinY = y; maxYIdx = xi;
-                        } else if (y > colMaxY) {
-                            colMaxY = y; minYIdx = xi;
-                        } // min & max are mixed because 'normalized' values are inverted
-                        path.lineTo(x, y);
-                        xi++; yi++;
-                    }
-                }
-                // don't mind right invisible part
-
-                if ((visibility & APPEARING) != 0) {
-                    Chart.Column column = columns[ci];
-                    double dColMinY = column.values[minYIdx];
-                    double dColMaxY = column.values[maxYIdx];
-                    if (dColMinY < _yMin) _yMin = dColMinY;
-                    if (dColMaxY > _yMax) _yMax = dColMaxY;
-                    visible = true;
-                }
-            }
-        }
+        // let's find visible window limits first; pyramids answer them without touching every visible point
+        begin(DrawMetrics.Y_RANGE);
+        double[] yBounds = this.yBounds;
+        yBounds[0] = maxBottom;
+        yBounds[1] = minTop;
+        boolean visible = data.widenYBounds(firstVisibleIdx, lastVisibleIdx, visibilities, APPEARING, yBounds);
+        double _yMin = yBounds[0];
+        double _yMax = yBounds[1];
 
         double _yDiff = _yMax - _yMin;
         if (visible) {
@@ -241,12 +233,15 @@ public final class ChartDrawable extends Drawable {
                 yMin = _yMin;
                 yMax = _yMax;
                 yDiff = _yDiff;
+                yMinChannel.set(_yMin);
+                yMaxChannel.set(_yMax);
                 prevYMin = _yMin;
                 prevYMax = _yMax;
             } else if (yDiff != _yDiff || yMax != _yMax) {
                 animYDiff(_yMin, _yMax);
             }
         } // else don't touch scale and let the paths disappear
+        end(DrawMetrics.Y_RANGE);
 
         float xScale = width / (xEnd - xStart);
         float translateX = -xStart * xScale;
@@ -258,59 +253,165 @@ public final class ChartDrawable extends Drawable {
         boolean drawGuidelines = guidelineThickness > 0 && (guidelineColour & 0xFF_000000) != 0;
         boolean drawNumbers = textSize > 0 && numberPaint != null;
         int bottomPadding = 0;
+        int layerWidth = width + 1, layerHeight = height() + 1;
         if (drawNumbers && xValueFormatter != null) {
-            drawXValues(canvas, xScale, translateX);
+            begin(DrawMetrics.LABELS);
+            PictureLayer layer = xLabelLayer;
+            layer.set(0, visibleStart);
+            layer.set(1, visibleEnd);
+            layer.set(2, data.x.values.size());
+            layer.set(3, data.modCount);
+            layer.set(4, animatedTextAlpha);
+            layer.set(5, animDirection);
+            Canvas layerCanvas = layer.begin(canvas, layerWidth, layerHeight);
+            if (layerCanvas != null) drawXValues(layerCanvas, xScale, translateX);
+            layer.end(canvas);
+            end(DrawMetrics.LABELS);
             bottomPadding = (int) (2 * textSize);
         }
         drawNumbers &= yValueFormatter != null;
         if (drawGuidelines || drawNumbers) {
+            begin(DrawMetrics.GUIDELINES);
             int progress = yAnimProgress;
-            if (progress != 255) drawGuidelinesOrNumbers(canvas, drawGuidelines, drawNumbers, bottomPadding, prevYMin, prevYMax, 255 - progress);
-            if (progress != 0) drawGuidelinesOrNumbers(canvas, drawGuidelines, drawNumbers, bottomPadding, targetYMin, targetYMax, progress);
+            PictureLayer layer = guidelineLayer;
+            layer.set(0, prevYMin);
+            layer.set(1, prevYMax);
+            layer.set(2, targetYMin);
+            layer.set(3, targetYMax);
+            layer.set(4, yMin);
+            layer.set(5, yMax);
+            layer.set(6, progress);
+            layer.set(7, bottomPadding);
+            Canvas layerCanvas = layer.begin(canvas, layerWidth, layerHeight);
+            if (layerCanvas != null) {
+                if (progress != 255) drawGuidelinesOrNumbers(layerCanvas, drawGuidelines, drawNumbers, bottomPadding, prevYMin, prevYMax, 255 - progress);
+                if (progress != 0) drawGuidelinesOrNumbers(layerCanvas, drawGuidelines, drawNumbers, bottomPadding, targetYMin, targetYMax, progress);
+            }
+            layer.end(canvas);
+            end(DrawMetrics.GUIDELINES);
         }
 
         // draw columns (over guidelines)
         Paint paint = this.paint;
         paint.setStrokeWidth(chartThickness);
-        int height = height();
-        int chartHeight = height - bottomPadding - (int) chartThickness;
-        float heightFactor = (float) chartHeight / height;
-        canvas.translate(translateX, 0);
-
-        for (int ci = 0; ci < colCount; ci++) {
-            Chart.Column column = columns[ci];
-            paint.setColor(column.colour);
-            paint.setAlpha(visibilities[ci] & 0xFF);
+        int chartHeight = height() - bottomPadding - (int) chartThickness;
+        FrameState frame = publishFrame(firstVisibleIdx, lastVisibleIdx, xScale, translateX, chartHeight);
+        // there's no sense in drawing several points per pixel, pick appropriate level of detail
+        float pointsPerPx = ChartGeometry.pointsPerPx(firstVisibleIdx, lastVisibleIdx, width);
+        if (seriesRenderer != null) {
+            if (yDiff == yDiff) {
+                begin(DrawMetrics.PATHS);
+                Rect bounds = getBounds();
+                seriesRenderer.request(bounds.width(), bounds.height(), frame, chartHeight, pointsPerPx, visibilities);
+                end(DrawMetrics.PATHS);
+
+                begin(DrawMetrics.STROKE);
+                seriesRenderer.drawFront(canvas, xScale, translateX, yMin, yMax, chartHeight);
+                end(DrawMetrics.STROKE);
+            }
+        } else {
+            // series are recorded too: they don't change when only labels are animated, or a bubble is moving
+            PictureLayer layer = seriesLayer;
+            layer.set(0, firstVisibleIdx);
+            layer.set(1, lastVisibleIdx);
+            layer.set(2, xScale);
+            layer.set(3, translateX);
+            layer.set(4, yMin);
+            layer.set(5, yMax);
+            layer.set(6, chartHeight);
+            layer.set(7, data.modCount);
+            layer.set(8, data.x.values.size()); // appending changes column bounds
+            for (int ci = 0; ci < colCount; ci++) {
+                layer.set(9 + ci, visibilities[ci]);
+            }
+            Canvas layerCanvas = layer.begin(canvas, layerWidth, layerHeight);
+            if (layerCanvas != null) {
+                begin(DrawMetrics.PATHS);
+                series.pick(geometry, data, firstVisibleIdx, lastVisibleIdx, pointsPerPx, visibilities);
+                end(DrawMetrics.PATHS);
 
-            // y values are normalized to [0; height] with no regard to other data sets, let's scale according to that
-            float colYDiff = (float) (column.maxValue - column.minValue);
-            float yScale = colYDiff == 0.0 ? 1f : (float) (colYDiff / yDiff);
-            yScale *= heightFactor;
-            float translateY = (float) ((yMax - column.maxValue) / yDiff * chartHeight);
-
-            Path path = paths[ci];
-            matrix.setScale(xScale, yScale);
-            matrix.postTranslate(0, translateY + (int) chartThickness);
-            path.transform(matrix);
-            canvas.drawPath(path, paint);
-            path.rewind();
+                begin(DrawMetrics.STROKE);
+                // paths are cool & shit, but cannot be drawn partially, so let's fill 'em on demand
+                // drawLine was OK but can't draw good line joins
+                series.draw(layerCanvas, paint, path, xScale, translateX, frame.yScales, frame.translateYs);
+                end(DrawMetrics.STROKE);
+            }
+            layer.end(canvas);
         }
         canvas.restore();
+        end(DrawMetrics.TOTAL);
+    }
 
-        if (DEBUG) {
-            int pairs = lastVisibleIdx - firstVisibleIdx;
-            nanos = System.nanoTime() - nanos;
-            double sum = 0;
-            for (int i = firstVisibleIdx; i < lastVisibleIdx;) {
-                float v = normalized[i++];
-                sum += normalized[i] - v;
-            }
-            TextPaint tp = new TextPaint();
-            tp.setColor(0xFF_65B9AC);
-            tp.setTextSize(36);
-            canvas.drawText(String.format("avg. dx = %.2f", sum * xScale / pairs), 10, 30, tp);
-            canvas.drawText(String.format("draw: %d μs", nanos / 1000), 10, 70, tp);
+    private DrawMetrics metrics;
+    /**
+     * Makes draw() to record timings of its phases, or stops it if {@code null}.
+     */
+    public void setMetrics(DrawMetrics metrics) {
+        this.metrics = metrics;
+    }
+    private void begin(int phase) {
+        if (metrics != null) metrics.begin(phase);
+    }
+    private void end(int phase) {
+        if (metrics != null) metrics.end(phase);
+    }
+
+    /**
+     * What the last frame has shown, so overlays like {@link ChartBubbleView} are consistent with it
+     * and don't recalculate transforms. Valid until the next draw:
+     * {@link #draw} fills the spare instance, which is the previously published one, then swaps them.
+     * Don't keep a reference to it, copy what's needed.
+     */
+    static final class FrameState {
+        int firstIndex, lastIndex;
+        float xScale, translateX; // normalized X -> pixels
+        double yMin, yMax;
+        final float[] yScales, translateYs; // normalized Y of each column -> pixels
+        final boolean[] visible; // fully, i. e. not appearing or disappearing
+        FrameState(int colCount) {
+            yScales = new float[colCount];
+            translateYs = new float[colCount];
+            visible = new boolean[colCount];
         }
+        /** @return whether points are shown at the same positions as in {@param that} frame */
+        boolean samePositions(FrameState that) {
+            return xScale == that.xScale && translateX == that.translateX
+                    && Arrays.equals(yScales, that.yScales) && Arrays.equals(translateYs, that.translateYs)
+                    && Arrays.equals(visible, that.visible);
+        }
+    }
+    private FrameState frame, spareFrame;
+    private Runnable frameListener;
+    /**
+     * @param listener called after drawing a frame which shows points at other positions than the previous one,
+     *                 e. g. while the Y range is animated, so overlays can follow them
+     */
+    void setFrameListener(Runnable listener) {
+        this.frameListener = listener;
+    }
+    private FrameState publishFrame(int firstIndex, int lastIndex, float xScale, float translateX, int chartHeight) {
+        Chart.Column[] columns = data.columns;
+        FrameState frame = spareFrame;
+        if (frame == null) frame = new FrameState(columns.length);
+        frame.firstIndex = firstIndex;
+        frame.lastIndex = lastIndex;
+        frame.xScale = xScale;
+        frame.translateX = translateX;
+        frame.yMin = yMin;
+        frame.yMax = yMax;
+        for (int ci = 0; ci < columns.length; ci++) {
+            Chart.Column column = columns[ci];
+            // y values are normalized to [0; 1] with no regard to other data sets, let's scale according to that
+            float colYDiff = (float) (column.maxValue - column.minValue);
+            float yScale = colYDiff == 0.0 ? 1f : (float) (colYDiff / yDiff);
+            frame.yScales[ci] = yScale * chartHeight;
+            frame.translateYs[ci] = (float) ((yMax - column.maxValue) / yDiff * chartHeight) + (int) chartThickness;
+            frame.visible[ci] = visibilities[ci] == (byte) 255;
+        }
+        FrameState previous = spareFrame = this.frame;
+        this.frame = frame;
+        if (frameListener != null && (previous == null || !frame.samePositions(previous))) frameListener.run();
+        return frame;
     }
 
     private StringBuilder numberSb;
@@ -320,30 +421,7 @@ public final class ChartDrawable extends Drawable {
         double yDiff = yMax - yMin;
         double step = yDiff / height * 3 * textSize; // control the density of these numbers
         if (step != 0) {
-            int exp = 0;
-            while (step >= 10) {
-                step /= 10;
-                exp++;
-            }
-            while (step < 1) {
-                step *= 10;
-                exp--;
-            }
-            // assert step ∈ [1; 10)
-            // appropriate steps are like .1, .2, .5, 1, 2, 5, 10, ..., so let's choose between 1, 2, and 5
-            double one = Math.abs(step - 1);
-            double two = Math.abs(step - 2);
-            double five = Math.abs(step - 5);
-            double roundStep;
-            if (one <= two) {
-                roundStep = 1;
-            } else if (two <= five) {
-                roundStep = 2;
-            } else {
-                roundStep = 5;
-            }
-
-            roundStep *= Math.pow(10, exp);
+            double roundStep = ChartGeometry.niceStep(step);
 
             // finally, roundStep is user-visible step, let's draw it
             double guideline = roundStep * Math.ceil(yMin / roundStep); // first guideline
@@ -375,12 +453,12 @@ public final class ChartDrawable extends Drawable {
         }
     }
     private void drawXValues(Canvas canvas, float xScale, float translateX) {
-        int length = data.x.values.length;
+        int length = data.x.values.size();
 
         // let's transform millis to [0; xValues.length]. For monotone Xes, this will give labels exactly under nodes;
         // for non-monotone Xes these values cannot be used as array indices — still using binary search instead.
-        float firstVisibleX = firstVisibleXPerMille * length / 1000f; // [0; length)
-        float firstInvisibleX = firstInvisibleXPerMille * length / 1000f;
+        float firstVisibleX = (float) (visibleStart * length); // [0; length)
+        float firstInvisibleX = (float) (visibleEnd * length);
 
         float visibleXValues = firstInvisibleX - firstVisibleX;
         float xWidthPx = (float) width() / visibleXValues;
@@ -390,11 +468,14 @@ public final class ChartDrawable extends Drawable {
         int highest = Integer.highestOneBit(textLengthX);
         textLengthX = highest + (textLengthX > highest ? highest : 0); // and round it up to a power of two
 
-        if (texts == null) texts = new StringBuilder();
-        // find sample size where all texts can be fit
+        if (labels == null) labels = new LabelCache();
+        if (labelModCount != data.modCount) { // labels of rolled up or replaced data are different
+            labels.clear();
+            labelModCount = data.modCount;
+        }
+        // find sample size where all texts can be fit; labels are formatted & measured only once
         while (true) { // try sample sizes until we find a suitable one
             float textWidthPx = (float) textLengthX * xWidthPx; // will be >= 32 for the first time
-            texts.setLength(0);
             int requiredSpace = fitTexts(firstVisibleX, firstInvisibleX, textLengthX, textWidthPx, null, Float.NaN, Float.NaN, Float.NaN);
             if (requiredSpace == 1) {
                 break;
@@ -413,33 +494,16 @@ public final class ChartDrawable extends Drawable {
 
     private int prevTextLengthX = -1;
     int animatedTextAlpha = 255;
-    ValueAnimator textAlphaAnimator;
     private int animDirection;
     private void animTextAlpha(int from, int to) {
-        if (textAlphaAnimator == null) {
-            if (nullOutTextAlphaAnim == null) {
-                nullOutTextAlphaAnim = new AnimatorListenerAdapter() {
-                    @Override public void onAnimationEnd(Animator animation) {
-                        textAlphaAnimator = null;
-                    }
-                };
-                updateTextAlphaAnim = new ValueAnimator.AnimatorUpdateListener() {
-                    @Override public void onAnimationUpdate(ValueAnimator animation) {
-                        animatedTextAlpha = (Integer) animation.getAnimatedValue();
-                        invalidateSelf();
-                    }
-                };
-            }
-            textAlphaAnimator = ObjectAnimator.ofInt(from, to).setDuration(X_ANIM_DURATION);
-            textAlphaAnimator.addListener(nullOutTextAlphaAnim);
-            textAlphaAnimator.addUpdateListener(updateTextAlphaAnim);
-            textAlphaAnimator.start();
+        if (!textAlphaChannel.isRunning()) {
+            textAlphaChannel.set(from);
+            textAlphaChannel.animateTo(to);
         }
     }
-    private AnimatorListenerAdapter nullOutTextAlphaAnim;
-    private ValueAnimator.AnimatorUpdateListener updateTextAlphaAnim;
 
-    private StringBuilder texts;
+    private LabelCache labels;
+    private int labelModCount;
     /**
      * @return how many times bigger {@param maxTextWidth} should be
      */
@@ -448,7 +512,7 @@ public final class ChartDrawable extends Drawable {
                          /*only for drawing*/ Canvas canvas, float translateX, float xScale, float y) {
 
         if (canvas != null) {
-            if (prevTextLengthX != -1 && textAlphaAnimator == null) {
+            if (prevTextLengthX != -1 && !textAlphaChannel.isRunning()) {
                 if (prevTextLengthX > textLengthX) {
                     animTextAlpha(0, 255);
                     animDirection = 1;
@@ -461,8 +525,8 @@ public final class ChartDrawable extends Drawable {
             if (animDirection == -1) textLengthX = Math.max(1, textLengthX/2); // show disappearing values, not only stable ones
         }
 
-        double[] xValues = data.x.values;
-        int length = xValues.length;
+        ColumnValues xValues = data.x.values;
+        int length = xValues.size();
         int width = width();
 
         int firstVisibleXRnd = (int) firstVisibleX / length * length;
@@ -472,76 +536,27 @@ public final class ChartDrawable extends Drawable {
         int last = count - 1;
         for (int i = 0; i <= last; i++) {
             int x = firstVisibleXRnd + i * textLengthX;
-            float xPos = width * x / length;
-            int xIdx = indexOfClosest(normalized, 0, length, xPos);
-            xPos = normalized[xIdx]; // find a real point near xPos
+            float xPos = (float) x / length;
+            int xIdx = geometry.indexOfClosest(xPos);
+            xPos = geometry.normalizedX(xIdx); // find a real point near xPos
 
-            xValueFormatter.formatValueInto(texts, xValues[xIdx]);
-//            texts.append('|'); // debug number placements
-            float textWidth = numberPaint.measureText(texts, 0, texts.length());
+            int label = labels.slot(xIdx, xValues.get(xIdx), xValueFormatter, numberPaint);
+            float textWidth = labels.width(label);
             if (canvas == null) { // dry run just for measurement
-                texts.setLength(0);
                 if (textWidth > maxTextWidth) {
                     return Math.max(2, Integer.highestOneBit((int) Math.ceil(textWidth / maxTextWidth)));
                 }
             } else {
-                // even here we can't reuse measured & formatted data from the previous pass because textLengthX may have changed which will move all text layouts
                 float xOnScreen = xPos * xScale + translateX;
                 float xq = -1.1f * xOnScreen / width + .05f; // [.05; -1.05]
                 numberPaint.setAlpha(i%2 == 0 ? 255 : animatedTextAlpha);
-                canvas.drawText(texts, 0, texts.length(), xOnScreen + xq * textWidth, y, numberPaint);
-                texts.setLength(0);
+                canvas.drawText(labels.text(label), 0, labels.length(label), xOnScreen + xq * textWidth, y, numberPaint);
             }
         }
         numberPaint.setAlpha(255);
         return 1;
     }
 
-    private void normalize() {
-        // let's translate & scale values into the given coordinates —
-        // translate & scale of Canvas can't work with so big values
-
-        Chart data = this.data;
-        Chart.Column[] columns = data.columns;
-        Chart.Column xCol = data.x;
-        double[] xValues = xCol.values;
-        int length = xValues.length;
-        int colCount = columns.length;
-        if (normalized == null) {
-            normalized = new float[length * (colCount + 1)];
-            paths = new Path[colCount];
-            for (int i = 0; i < colCount; i++) {
-                paths[i] = new Path();
-            }
-            matrix = new Matrix();
-        }
-
-        int width = width();
-        int height = height();
-        float[] normalized = this.normalized;
-
-        int i = 0;
-        {
-            double xMin = xCol.minValue;
-            double xDiff = xCol.maxValue - xMin;
-            for (; i < length; i++) {
-                normalized[i] = (float) (((xValues[i] - xMin) / xDiff) * width);
-            }
-        }
-
-        for (Chart.Column column : columns) {
-            double yMin = column.minValue;
-            double yDiff = column.maxValue - yMin;
-            double[] values = column.values;
-            for (int ci = 0; ci < length; ci++) { // normalize & also flip to our coordinates, where y=0 means 'top'
-                float v = (float) ((1 - ((values[ci] - yMin) / yDiff)) * height);
-                normalized[i++] = v;
-            }
-        }
-
-        dirtyBounds = false;
-    }
-
     // inclusive bounds
     private int width() {
         Rect bounds = getBounds();
@@ -555,6 +570,7 @@ public final class ChartDrawable extends Drawable {
     @Override public void setAlpha(int alpha) {
         paint.setAlpha(alpha);
         if (numberPaint != null) numberPaint.setAlpha(alpha);
+        invalidateLayers();
     }
     @Override public int getAlpha() {
         return paint.getAlpha();
@@ -563,6 +579,8 @@ public final class ChartDrawable extends Drawable {
     @Override public void setColorFilter(@Nullable ColorFilter colorFilter) {
         paint.setColorFilter(colorFilter);
         if (numberPaint != null) numberPaint.setColorFilter(colorFilter);
+        if (seriesRenderer != null) seriesRenderer.bitmapPaint.setColorFilter(colorFilter);
+        invalidateLayers();
     }
     @Nullable @Override public ColorFilter getColorFilter() {
         return paint.getColorFilter();
@@ -572,51 +590,41 @@ public final class ChartDrawable extends Drawable {
         return PixelFormat.TRANSLUCENT;
     }
 
+    /**
+     * Makes layers to be re-recorded on the next frame. Call it when something which is not a layer input changes, e. g. colours.
+     */
+    private void invalidateLayers() {
+        xLabelLayer.invalidate();
+        guidelineLayer.invalidate();
+        seriesLayer.invalidate();
+    }
+
     @Override protected void onBoundsChange(Rect bounds) {
-        dirtyBounds = true;
-        invalidateSelf();
+        invalidateSelf(); // geometry is bounds-independent, just redraw
     }
 
-    public void setColumnVisibleAt(final int index, boolean whether) {
+    public void setColumnVisibleAt(int index, boolean whether) {
         if (index < 0 || index >= data.columns.length) {
             throw new IndexOutOfBoundsException(String.format("index must be in [0; %d), %d given", data.columns.length, index));
         }
         int alpha = visibilities[index] & 0xFF;
         int targetAlpha = whether ? 255 : 0;
         if (alpha != targetAlpha) {
-            if (visibilityAnimations == null) {
-                int length = visibilities.length;
-                visibilityAnimations = new ValueAnimator[length];
-                visibilityListeners = new ValueAnimator.AnimatorUpdateListener[length];
-            }
-            ValueAnimator anim = visibilityAnimations[index];
-            if (anim != null) {
-                anim.cancel();
-            }
-            if (visibilityListeners[index] == null) {
-                visibilityListeners[index] = new ValueAnimator.AnimatorUpdateListener() {
-                    @Override public void onAnimationUpdate(ValueAnimator animation) {
-                        int prev = visibilities[index] & 0xFF;
-                        int next = (byte) (int) (Integer) animation.getAnimatedValue();
-                        if (next > prev) next |= APPEARING;
-                        visibilities[index] = next;
-                        invalidateSelf();
-                    }
-                };
-            }
-
-            anim = ObjectAnimator.ofInt(alpha, targetAlpha).setDuration(Y_ANIM_DURATION);
-            anim.addUpdateListener(visibilityListeners[index]);
-            anim.start();
-            visibilityAnimations[index] = anim;
-
+            visibilityChannels[index].animateTo(targetAlpha);
             invalidateSelf();
         }
     }
 
-    public void setVisibleRange(int startPerMille, int endPerMille) {
-        firstVisibleXPerMille = startPerMille;
-        firstInvisibleXPerMille = endPerMille;
+    /**
+     * @param start fraction of the whole X range, in [0; 1]
+     * @param end   fraction of the whole X range, in (start; 1]
+     */
+    public void setVisibleRange(double start, double end) {
+        if (!(start >= 0 && start < end && end <= 1)) {
+            throw new IllegalArgumentException("range must be within [0; 1], given [" + start + "; " + end + "]");
+        }
+        visibleStart = start;
+        visibleEnd = end;
 
         invalidateSelf();
     }
@@ -624,6 +632,7 @@ public final class ChartDrawable extends Drawable {
     public void setGuidelineColour(@ColorInt int guidelineColour) {
         if (this.guidelineColour != guidelineColour) {
             this.guidelineColour = guidelineColour;
+            guidelineLayer.invalidate();
             invalidateSelf();
         }
     }
@@ -636,99 +645,57 @@ public final class ChartDrawable extends Drawable {
             numberPaint.setTextSize(textSize);
             numberPaint.setColorFilter(paint.getColorFilter());
             numberSb = new StringBuilder(5);
+            invalidateLayers();
             invalidateSelf();
         } else if (numberPaint.getColor() != numberColour) {
             numberPaint.setColor(numberColour);
+            invalidateLayers();
             invalidateSelf();
         }
     }
 
-    private static int indexOfClosest(float[] haystack, int fromIndex, int toIndex, float needle) {
-        if ((fromIndex = Arrays.binarySearch(haystack, fromIndex, toIndex, needle)) < 0) {
-            fromIndex = -fromIndex - 1; // save up a local variable by reusing fromIndex (just because I can LOL)
-            if (fromIndex == toIndex || // insertion point == length
-                (fromIndex > 0 && needle - haystack[fromIndex - 1] < haystack[fromIndex] - needle))
-                fromIndex--; // ^^ insertion point is always right point, choose left one if it's closer
-        }
-        return fromIndex;
-    }
-
-    public interface ValueFormatter {
-        void formatValueInto(StringBuilder sb, double value);
-    }
-
-    // shortcuts for ChartExtrasView
+    // shortcuts for ChartExtrasView, they show what the last frame has drawn, see FrameState
 
     int getIndexAt(float xPos) {
-        if (dirtyBounds) normalize();
+        FrameState frame = this.frame;
+        if (frame == null) return -1; // nothing drawn yet
+        geometry.normalizeIfNeeded();
 
-        float scaledX = (xPos - translateX()) / xScale();
-        int length = data.x.values.length;
-        return indexOfClosest(normalized, 0, length, scaledX);
+        return geometry.indexOfClosest((xPos - frame.translateX) / frame.xScale);
     }
     float getXPositionAt(int index) {
-        if (dirtyBounds) normalize();
+        FrameState frame = this.frame;
+        if (frame == null) return Float.NaN; // nothing drawn yet
+        geometry.normalizeIfNeeded();
 
-        return normalized[index] * xScale() + translateX();
+        return geometry.normalizedX(index) * frame.xScale + frame.translateX;
     }
     double getXValueAt(int index) {
-        return data.x.values[index];
+        return data.x.values.get(index);
     }
     double[] getYValuesAt(int index, double[] dest) {
+        FrameState frame = this.frame;
         Chart.Column[] cols = data.columns;
         int length = cols.length;
         if (dest == null || dest.length != length) {
             dest = new double[length];
         }
         for (int i = 0; i < length; i++) {
-            dest[i] = visibilities[i] == (byte) 255 ? cols[i].values[index] : Double.NaN;
+            dest[i] = frame != null && frame.visible[i] ? cols[i].values.get(index) : Double.NaN;
         }
         return dest;
     }
-
-    // kinda copy-paste of draw() contents
-    private float xScale() {
-        int width = width();
-        float xStart = width * firstVisibleXPerMille / 1000f;
-        float xEnd = width * firstInvisibleXPerMille / 1000f;
-        return width / (xEnd - xStart);
-    }
-    private float translateX() {
-        int width = width();
-        float xStart = width * firstVisibleXPerMille / 1000f; // [0; width] currently visible
-        float xScale = xScale();
-        return -xStart * xScale;
-    }
-
-    // serious copy-paste
     float[] getYPositionsAt(int index, float[] dest) {
-        if (dirtyBounds) normalize();
-        // fixme: assumes draw() was called!
-
+        FrameState frame = this.frame;
         Chart.Column[] columns = data.columns;
         int colCnt = columns.length;
         if (dest == null || dest.length != colCnt) {
             dest = new float[colCnt];
         }
-        int length = data.x.values.length;
-
-        boolean drawNumbers = textSize > 0 && numberPaint != null;
-        int bottomPadding = drawNumbers && xValueFormatter != null ? (int) (2 * textSize) : 0;
-
-        int height = height();
-        int chartHeight = height - bottomPadding - (int) chartThickness;
-        float heightFactor = (float) chartHeight / height;
         for (int i = 0; i < colCnt; i++) {
-            if (visibilities[i] == (byte) 255) {
-                Chart.Column column = columns[i];
-                double colYMax = column.maxValue;
-                double colYDiff = colYMax - column.minValue;
-                float yScale = (float) (colYDiff / yDiff) * heightFactor;
-                float translateY = (float) ((yMax - colYMax) / yDiff * chartHeight);
-                dest[i] = translateY + normalized[length + i * length + index] * yScale + (int) chartThickness;
-            } else {
-                dest[i] = Float.NaN;
-            }
+            dest[i] = frame != null && frame.visible[i]
+                    ? ChartGeometry.normalizedY(columns[i], index) * frame.yScales[i] + frame.translateYs[i]
+                    : Float.NaN;
         }
         return dest;
     }
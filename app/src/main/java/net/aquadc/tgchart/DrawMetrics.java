@@ -0,0 +1,146 @@
+package net.aquadc.tgchart;
+
+import android.os.Build;
+import android.os.Trace;
+import androidx.annotation.MainThread;
+
+/**
+ * Timings of {@link ChartDrawable#draw} phases, see {@link ChartDrawable#setMetrics}.
+ * Every phase has a fixed-size histogram, so recording allocates nothing; phases are also emitted as
+ * {@link Trace} sections (API 18+), so they are visible in systrace.
+ * Histograms are log-linear: 8 buckets per power of two microseconds, so percentiles are within 12.5%.
+ * Main thread only, like drawing; poll {@link #snapshot()} from there.
+ */
+@MainThread public final class DrawMetrics {
+
+    public static final int TOTAL = 0;
+    public static final int NORMALIZE = 1;
+    public static final int WINDOW = 2; // visible index range search
+    public static final int Y_RANGE = 3;
+    public static final int LABELS = 4; // X labels layout & drawing
+    public static final int GUIDELINES = 5; // Y guidelines & numbers
+    public static final int PATHS = 6; // path filling
+    public static final int STROKE = 7; // stroking or blitting series
+    public static final int PHASE_COUNT = 8;
+
+    private static final String[] NAMES = {
+            "ChartDrawable.draw", "normalize", "window", "yRange", "labels", "guidelines", "paths", "stroke"
+    };
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = SUB_BUCKETS * 24; // up to 2^23 μs ≈ 8 s, longer times fall into the last bucket
+
+    private final long[][] counts = new long[PHASE_COUNT][BUCKETS];
+    private final long[] totalCounts = new long[PHASE_COUNT];
+    private final long[] sums = new long[PHASE_COUNT]; // μs
+    private final long[] maxs = new long[PHASE_COUNT]; // μs
+    private final long[] starts = new long[PHASE_COUNT];
+
+    public static String phaseName(int phase) {
+        return NAMES[phase];
+    }
+
+    void begin(int phase) {
+        if (Build.VERSION.SDK_INT >= 18) Trace.beginSection(NAMES[phase]);
+        starts[phase] = System.nanoTime();
+    }
+
+    void end(int phase) {
+        long micros = (System.nanoTime() - starts[phase]) / 1000;
+        if (Build.VERSION.SDK_INT >= 18) Trace.endSection();
+        counts[phase][bucketOf(micros)]++;
+        totalCounts[phase]++;
+        sums[phase] += micros;
+        if (micros > maxs[phase]) maxs[phase] = micros;
+    }
+
+    public void reset() {
+        for (int phase = 0; phase < PHASE_COUNT; phase++) {
+            long[] phaseCounts = counts[phase];
+            for (int b = 0; b < BUCKETS; b++) phaseCounts[b] = 0;
+            totalCounts[phase] = sums[phase] = maxs[phase] = 0;
+        }
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    private static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS) return (int) micros;
+        int exp = 63 - Long.numberOfLeadingZeros(micros); // >= SUB_BITS
+        int sub = (int) (micros >> (exp - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return Math.min(BUCKETS - 1, SUB_BUCKETS + (exp - SUB_BITS) * SUB_BUCKETS + sub);
+    }
+
+    /** @return the biggest value which falls into the bucket */
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int exp = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BITS;
+        int sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << (exp - SUB_BITS)) - 1;
+    }
+
+    /**
+     * Immutable copy of histograms.
+     */
+    public static final class Snapshot {
+        private final long[][] counts;
+        private final long[] totalCounts, sums, maxs;
+
+        Snapshot(DrawMetrics metrics) {
+            counts = new long[PHASE_COUNT][];
+            for (int phase = 0; phase < PHASE_COUNT; phase++) {
+                counts[phase] = metrics.counts[phase].clone();
+            }
+            totalCounts = metrics.totalCounts.clone();
+            sums = metrics.sums.clone();
+            maxs = metrics.maxs.clone();
+        }
+
+        /** @return how many times the phase was recorded */
+        public long count(int phase) {
+            return totalCounts[phase];
+        }
+
+        public double meanMicros(int phase) {
+            return totalCounts[phase] == 0 ? Double.NaN : (double) sums[phase] / totalCounts[phase];
+        }
+
+        public long maxMicros(int phase) {
+            return maxs[phase];
+        }
+
+        /**
+         * @param percentile in (0; 100]
+         * @return time which {@param percentile}% of recorded ones don't exceed, rounded up to a bucket bound, or -1 if none recorded
+         */
+        public long percentileMicros(int phase, double percentile) {
+            long total = totalCounts[phase];
+            if (total == 0) return -1;
+            long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+            long[] phaseCounts = counts[phase];
+            long seen = 0;
+            for (int b = 0; b < BUCKETS; b++) {
+                seen += phaseCounts[b];
+                if (seen >= rank) return Math.min(upperBoundOf(b), maxs[phase]);
+            }
+            return maxs[phase];
+        }
+
+        @Override public String toString() {
+            StringBuilder sb = new StringBuilder("DrawMetrics{");
+            for (int phase = 0; phase < PHASE_COUNT; phase++) {
+                if (phase > 0) sb.append(", ");
+                sb.append(NAMES[phase]).append(": n=").append(count(phase))
+                        .append(" p50=").append(percentileMicros(phase, 50))
+                        .append(" p90=").append(percentileMicros(phase, 90))
+                        .append(" p99=").append(percentileMicros(phase, 99))
+                        .append(" max=").append(maxMicros(phase)).append("μs");
+            }
+            return sb.append('}').toString();
+        }
+    }
+
+}
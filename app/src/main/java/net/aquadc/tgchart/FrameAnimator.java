@@ -0,0 +1,186 @@
+package net.aquadc.tgchart;
+
+import android.animation.TimeInterpolator;
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+import androidx.annotation.MainThread;
+
+import java.util.Arrays;
+
+/**
+ * Drives animations from the display frame clock: {@link Choreographer} since API 16, a {@link Handler} before.
+ * Values live in primitive {@link Channel}s which can be retargeted mid-flight, continuing from where they are.
+ * Nothing is allocated per frame, and the client hears once per frame, whatever the number of running channels.
+ */
+@MainThread final class FrameAnimator {
+
+    private static final long FALLBACK_FRAME_MILLIS = 16;
+
+    private final Runnable onFrame;
+    private final Ticker ticker;
+    private Channel[] channels = new Channel[0];
+    private boolean scheduled;
+
+    /**
+     * @param onFrame called after channels are updated, once per frame while any of them is running
+     *                or if a frame was requested
+     */
+    FrameAnimator(Runnable onFrame) {
+        this.onFrame = onFrame;
+        this.ticker = Build.VERSION.SDK_INT >= 16 ? new ChoreographerTicker(this) : new HandlerTicker(this);
+    }
+
+    Channel channel(double value, int durationMillis, TimeInterpolator interpolator) {
+        Channel channel = new Channel(this, value, durationMillis * 1_000_000L, interpolator);
+        channels = Arrays.copyOf(channels, channels.length + 1);
+        channels[channels.length - 1] = channel;
+        return channel;
+    }
+
+    /**
+     * Stops all channels where they are.
+     */
+    void cancel() {
+        for (Channel channel : channels) {
+            channel.running = false;
+        }
+        if (scheduled) {
+            scheduled = false;
+            ticker.cancel();
+        }
+    }
+
+    /**
+     * Makes the client hear on the next frame, e. g. to apply changes coalesced since the previous one.
+     */
+    void requestFrame() {
+        schedule();
+    }
+
+    private void schedule() {
+        if (!scheduled) {
+            scheduled = true;
+            ticker.post();
+        }
+    }
+
+    void doFrame(long frameTimeNanos) {
+        scheduled = false;
+        boolean running = false;
+        for (Channel channel : channels) {
+            if (channel.running) running |= channel.update(frameTimeNanos);
+        }
+        if (running) schedule();
+        onFrame.run();
+    }
+
+    static final class Channel {
+        private final FrameAnimator animator;
+        private long durationNanos;
+        private final TimeInterpolator interpolator;
+        private double value, from, to;
+        private long startNanos;
+        private boolean running;
+
+        private Channel(FrameAnimator animator, double value, long durationNanos, TimeInterpolator interpolator) {
+            this.animator = animator;
+            this.value = this.to = value;
+            this.durationNanos = durationNanos;
+            this.interpolator = interpolator;
+        }
+
+        double value() {
+            return value;
+        }
+
+        double target() {
+            return to;
+        }
+
+        boolean isRunning() {
+            return running;
+        }
+
+        /**
+         * Jumps to the value immediately, stopping animation, if any.
+         */
+        void set(double value) {
+            this.value = this.to = value;
+            running = false;
+        }
+
+        /**
+         * Starts animating from the current value to the given one. Does nothing if already there or heading there.
+         */
+        void animateTo(double to) {
+            if (running ? to == this.to : to == value) return;
+            this.from = value;
+            this.to = to;
+            this.startNanos = System.nanoTime();
+            this.running = true;
+            animator.schedule();
+        }
+
+        /**
+         * Like {@link #animateTo(double)}, but restarts even if heading there, and takes this time instead of the default one.
+         */
+        void animateTo(double to, int durationMillis) {
+            running = false;
+            durationNanos = durationMillis * 1_000_000L;
+            animateTo(to);
+        }
+
+        private boolean update(long nowNanos) {
+            float t = (float) (nowNanos - startNanos) / durationNanos;
+            if (t >= 1) {
+                value = to;
+                running = false;
+            } else {
+                value = from + (to - from) * interpolator.getInterpolation(Math.max(0, t));
+            }
+            return running;
+        }
+    }
+
+    private static abstract class Ticker {
+        abstract void post();
+        abstract void cancel();
+    }
+
+    @TargetApi(16) private static final class ChoreographerTicker extends Ticker implements Choreographer.FrameCallback {
+        private final FrameAnimator animator;
+        ChoreographerTicker(FrameAnimator animator) {
+            this.animator = animator;
+        }
+        @Override void post() {
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+        @Override void cancel() {
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+        @Override public void doFrame(long frameTimeNanos) {
+            animator.doFrame(frameTimeNanos);
+        }
+    }
+
+    private static final class HandlerTicker extends Ticker implements Runnable {
+        private final FrameAnimator animator;
+        private final Handler handler = new Handler(Looper.getMainLooper());
+        HandlerTicker(FrameAnimator animator) {
+            this.animator = animator;
+        }
+        @Override void post() {
+            handler.postDelayed(this, FALLBACK_FRAME_MILLIS);
+        }
+        @Override void cancel() {
+            handler.removeCallbacks(this);
+        }
+        @Override public void run() {
+            animator.doFrame(System.nanoTime());
+        }
+    }
+
+}
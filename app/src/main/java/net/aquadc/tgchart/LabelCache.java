@@ -0,0 +1,65 @@
+package net.aquadc.tgchart;
+
+import android.graphics.Paint;
+
+import java.util.Arrays;
+
+/**
+ * Formatted and measured labels of X values, so laying labels out costs lookups instead of formatting and measuring.
+ * Direct-mapped by hashed X index, so it takes constant memory; a collision just formats a label again.
+ */
+final class LabelCache {
+
+    private static final int SHIFT = 8;
+    private static final int SIZE = 1 << SHIFT; // a few screens of labels
+
+    private final int[] indices = new int[SIZE];
+    private final char[][] texts = new char[SIZE][];
+    private final int[] lengths = new int[SIZE];
+    private final float[] widths = new float[SIZE];
+    private final StringBuilder sb = new StringBuilder();
+
+    LabelCache() {
+        clear();
+    }
+
+    /**
+     * @return slot of the label for the X {@param value} at {@param index}, formatting and measuring it if needed
+     */
+    int slot(int index, double value, ValueFormatter formatter, Paint paint) {
+        int slot = (index * 0x9E3779B9) >>> (32 - SHIFT); // labels are at multiples of powers of two, spread them
+        if (indices[slot] != index) {
+            StringBuilder sb = this.sb;
+            formatter.formatValueInto(sb, value);
+            int length = sb.length();
+            char[] text = texts[slot];
+            if (text == null || text.length < length) texts[slot] = text = new char[Math.max(length, 16)];
+            sb.getChars(0, length, text, 0);
+            sb.setLength(0);
+            lengths[slot] = length;
+            widths[slot] = paint.measureText(text, 0, length);
+            indices[slot] = index;
+        }
+        return slot;
+    }
+
+    char[] text(int slot) {
+        return texts[slot];
+    }
+
+    int length(int slot) {
+        return lengths[slot];
+    }
+
+    float width(int slot) {
+        return widths[slot];
+    }
+
+    /**
+     * Forgets all labels, e. g. when data, formatter, or text size change.
+     */
+    void clear() {
+        Arrays.fill(indices, -1);
+    }
+
+}
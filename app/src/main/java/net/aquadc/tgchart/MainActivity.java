@@ -8,6 +8,7 @@ import android.animation.ObjectAnimator;
 import android.animation.TypeEvaluator;
 import android.animation.ValueAnimator;
 import android.app.Activity;
+import android.content.Context;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.GradientDrawable;
@@ -16,6 +17,7 @@ import android.graphics.drawable.LayerDrawable;
 import android.graphics.drawable.TransitionDrawable;
 import android.os.Build;
 import android.os.Bundle;
+import android.util.Log;
 import android.util.Property;
 import android.view.Menu;
 import android.view.MenuItem;
@@ -32,8 +34,9 @@ import androidx.core.view.ViewCompat;
 import androidx.vectordrawable.graphics.drawable.VectorDrawableCompat;
 import com.codemonkeylabs.fpslibrary.TinyDancer;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Locale;
 import java.util.Random;
 
@@ -42,6 +45,7 @@ public final class MainActivity extends Activity
         implements ValueCallback<Chart>, RangeBar.SelectionChangeListener, AdapterView.OnItemClickListener {
 
     private static SettableFuture<Chart> chart;
+    private static JsonCharts jsonCharts; // until charts are converted, they're picked from here, recently parsed ones are cached
 
     private static final String K_COLOUR_MODE = "colourMode";
     private ColourMode colourMode = ColourMode.LIGHT;
@@ -61,14 +65,14 @@ public final class MainActivity extends Activity
     private View windowBackground;
 
     private ChartDrawable bigChart;
-    private ChartDrawable smallChart;
+    private OverviewDrawable smallChart;
 
     @Override protected void onCreate(Bundle savedInstanceState) {
         if (chart == null) {
             chart = new SettableFuture<>();
             new Thread() {
                 @Override public void run() {
-                    chart.set(Chart.readTestChart(getApplicationContext()));
+                    chart.set(readTestChart(getApplicationContext()));
                 }
             }.start();
         }
@@ -86,9 +90,8 @@ public final class MainActivity extends Activity
     }
     @Override public void onReceiveValue(Chart value) {
         Locale locale = getResources().getConfiguration().locale;
-        Date sharedDate = new Date();
-        ChartDrawable.ValueFormatter shortFormat = new DateFormatter(sharedDate, new SimpleDateFormat("MMM d", locale));
-        ChartDrawable.ValueFormatter longFormat = new DateFormatter(sharedDate, new SimpleDateFormat("E, MMM d", locale));
+        ValueFormatter shortFormat = new DateFormatter("MMM d", locale);
+        ValueFormatter longFormat = new DateFormatter("E, MMM d", locale);
 
         float dp = getResources().getDisplayMetrics().density;
         float sp = getResources().getDisplayMetrics().scaledDensity;
@@ -100,8 +103,9 @@ public final class MainActivity extends Activity
         chartBubbleView.setChart(bigChart);
         chartBubbleView.setPadding(0, 0, 0, /* textSize * 2 */ (int) (28 * sp));
         chartBubbleView.setFormatters(longFormat, countFormatter);
+        chartBubbleView.setRangeBar(rangeBar); // the bar will tell the chart
 
-        smallChart = new ChartDrawable(value, Math.max(1, dp));
+        smallChart = new OverviewDrawable(value, Math.max(1, dp));
         ViewCompat.setBackground(rangeBarChartView, new InsetDrawable(smallChart, rangeBar.getPaddingLeft(), 0, rangeBar.getPaddingRight(), 0));
         rangeBarChartView.setPadding(0, 0, 0, 0);
         rangeBar.setSelectionChangeListener(this); // split up chart and bar, so invalidate() will trigger only a single redraw
@@ -126,7 +130,7 @@ public final class MainActivity extends Activity
         columnChooser.setData(value.columns, this);
         applyColours(colourMode, false);
     }
-    @Override public void onSelectedRangeChanged(int selectionStart, int selectionEnd) {
+    @Override public void onSelectedRangeChanged(double selectionStart, double selectionEnd) {
         bigChart.setVisibleRange(selectionStart, selectionEnd);
     }
     @Override public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
@@ -156,6 +160,10 @@ public final class MainActivity extends Activity
     @Override
     protected void onDestroy() {
         chart.unsubscribe(this);
+        if (bigChart != null) {
+            bigChart.release();
+            smallChart.release();
+        }
         super.onDestroy();
     }
 
@@ -328,32 +336,69 @@ public final class MainActivity extends Activity
         return new TransitionDrawable(new Drawable[] { a, new ColorDrawable(to) });
     }
 
-    private static final ChartDrawable.ValueFormatter countFormatter = new ChartDrawable.ValueFormatter() {
-        private final double[] multipliers = { 1_000_000_000, 1_000_000, 1_000, 1, .001, .000_001 /* intentionally omitted .000_000_001 */ };
-        private final char[] units = { 'G', 'M', 'k', '\0', 'm', 'μ', 'n' };
-        @Override public void formatValueInto(StringBuilder sb, double value) {
-            int unitIdx = 0;
-            char unit;
-            if (value == 0.0 || Double.isInfinite(value) || Double.isNaN(value)) {
-                unit = '\0';
-            } else {
-                for (; unitIdx < multipliers.length; unitIdx++) {
-                    double mul = multipliers[unitIdx];
-                    if (value >= mul) {
-                        value /= mul;
-                        break;
+    private static Chart readTestChart(Context context) {
+        try {
+            // JSON is parsed only once, then the binary copy is just mapped into memory.
+            // The copy is keyed by asset contents, so app updates which don't touch charts don't invalidate it
+            final File cacheDir = context.getCacheDir();
+            final File file = new File(cacheDir, CHART_DATA_PREFIX + BuildConfig.CHART_DATA_KEY + CHART_DATA_SUFFIX);
+            Chart chart;
+            if (!file.exists()) {
+                if (jsonCharts == null) {
+                    byte[] source;
+                    InputStream in = context.getAssets().open("chart_data.json");
+                    try {
+                        source = JsonCharts.readAll(in);
+                    } finally {
+                        in.close();
                     }
+                    jsonCharts = new JsonCharts(source, source.length);
                 }
-                unit = units[unitIdx];
-            }
-            if (unit != '\0') { // round value to a single digit after comma
-                value = Math.round(10 * value) / 10.0d;
+                final JsonCharts json = jsonCharts;
+                // parse only the chart we're going to show, convert all of them later
+                chart = json.get(new Random().nextInt(json.size()));
+                new Thread("chart_data.bin") {
+                    @Override public void run() {
+                        try {
+                            ChartFile.convert(json, file);
+                        } catch (IOException e) {
+                            Log.w("Chart", "can't convert charts, will try next time", e);
+                            return;
+                        }
+                        File[] files = cacheDir.listFiles();
+                        if (files != null) for (File stale : files) {
+                            if (isChartDataCopy(stale.getName()) && !stale.equals(file)) stale.delete();
+                        }
+                    }
+                }.start();
+            } else {
+                Chart[] ch = ChartFile.map(file);
+                chart = ch[new Random().nextInt(ch.length)];
             }
-            sb.append(value);
-            int i = sb.lastIndexOf(".0");
-            if (i > 0) sb.setLength(i);
-            if (unit != '\0') sb.append(unit);
+
+            // we're on a background thread, prepare everything now instead of the first draw()
+            ChartPreprocessor.prepare(chart);
+            return chart;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
         }
-    };
+    }
+
+
+    private static final String CHART_DATA_PREFIX = "chart_data-";
+    private static final String CHART_DATA_SUFFIX = ".bin";
+    /** Matches binary copies written by {@link #readTestChart}, and their temporary files left by {@link ChartFile#convert}. */
+    private static boolean isChartDataCopy(String name) {
+        if (name.endsWith(".tmp")) name = name.substring(0, name.length() - ".tmp".length());
+        if (!name.startsWith(CHART_DATA_PREFIX) || !name.endsWith(CHART_DATA_SUFFIX)) return false;
+        int from = CHART_DATA_PREFIX.length(), to = name.length() - CHART_DATA_SUFFIX.length();
+        if (to - from != 40) return false; // hex SHA-1
+        for (int i = from; i < to; i++) {
+            if (Character.digit(name.charAt(i), 16) < 0) return false;
+        }
+        return true;
+    }
+
+    private static final ValueFormatter countFormatter = new CountFormatter();
 
 }
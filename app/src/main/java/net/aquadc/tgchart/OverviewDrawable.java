@@ -0,0 +1,258 @@
+package net.aquadc.tgchart;
+
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.ValueAnimator;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Shows the whole chart, e. g. under a {@link RangeBar}.
+ * It never changes its visible range, so it is rendered into a bitmap on a background thread,
+ * and only when bounds, column visibility, or data change. Old and new bitmaps cross-fade,
+ * so visibility animations don't stroke paths on every tick.
+ * Points are picked on the main thread, and bitmaps are reused, see {@link SeriesSnapshot} and {@link BitmapPool}.
+ */
+public final class OverviewDrawable extends Drawable {
+
+    private static final int FADE_DURATION = 250; // like visibility animations of ChartDrawable
+
+    private final Chart data;
+    private final ChartGeometry geometry; // shared with other drawables showing the same chart
+    private final float chartThickness;
+    private final boolean[] visible;
+    private final Paint bitmapPaint;
+    private final Handler handler;
+
+    // current, previous, and the one being rendered
+    private final BitmapPool bitmaps = new BitmapPool(3);
+    private Bitmap current, previous;
+    private int fade = 255; // alpha of current bitmap over the previous one
+    private ValueAnimator fadeAnimator;
+    private int alpha = 255;
+
+    // a single render at a time uses all of these
+    private final SeriesSnapshot series;
+    private final int[] alphas;
+    private final float[] yScales, translateYs;
+    private final Paint paint;
+    private final Path path;
+    private boolean busy;
+
+    private int generation; // renders of older generations are ignored
+    private boolean dirty; // a render is needed, but not started yet
+    private int pickedLength = -1, pickedModCount; // what the latest render shows
+
+    public OverviewDrawable(Chart data, float chartThickness) {
+        this.data = data;
+        this.geometry = ChartGeometry.acquire(data);
+        this.chartThickness = chartThickness;
+        int length = data.columns.length;
+        this.visible = new boolean[length];
+        for (int i = 0; i < length; i++) {
+            visible[i] = true;
+        }
+        this.bitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        this.handler = new Handler(Looper.getMainLooper());
+
+        this.series = new SeriesSnapshot(data);
+        this.alphas = new int[length];
+        this.yScales = new float[length];
+        this.translateYs = new float[length];
+        this.paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        this.paint.setStyle(Paint.Style.STROKE);
+        this.paint.setStrokeWidth(chartThickness);
+        this.path = new Path();
+    }
+
+    public void setColumnVisibleAt(int index, boolean whether) {
+        if (index < 0 || index >= data.columns.length) {
+            throw new IndexOutOfBoundsException(String.format("index must be in [0; %d), %d given", data.columns.length, index));
+        }
+        if (visible[index] != whether) {
+            visible[index] = whether;
+            requestRender();
+        }
+    }
+
+    /**
+     * Drops bitmaps, ignores renders which are in progress, and releases geometry shared with other drawables.
+     * Call it when the drawable is not needed anymore.
+     */
+    public void release() {
+        generation++;
+        busy = dirty = false;
+        if (fadeAnimator != null) fadeAnimator.cancel();
+        current = previous = null;
+        bitmaps.clear();
+        geometry.release();
+    }
+
+    @Override protected void onBoundsChange(Rect bounds) {
+        requestRender();
+    }
+
+    @Override public void draw(@NonNull Canvas canvas) {
+        bitmaps.nextDraw();
+        if (pickedLength != data.x.values.size() || pickedModCount != data.modCount) {
+            dirty = true; // data was appended or rolled up, keep showing the old bitmap meanwhile
+        }
+        startRender();
+
+        Rect bounds = getBounds();
+        Paint paint = bitmapPaint;
+        if (previous != null && fade < 255) {
+            paint.setAlpha((255 - fade) * alpha / 255);
+            canvas.drawBitmap(previous, bounds.left, bounds.top, paint);
+            bitmaps.drawn(previous);
+        }
+        if (current != null) {
+            paint.setAlpha(fade * alpha / 255);
+            canvas.drawBitmap(current, bounds.left, bounds.top, paint);
+            bitmaps.drawn(current);
+        }
+
+    }
+
+    private void requestRender() {
+        dirty = true;
+        startRender();
+    }
+
+    private void startRender() {
+        if (busy || !dirty) return;
+        Rect bounds = getBounds();
+        int width = bounds.width();
+        int height = bounds.height();
+        if (width <= 0 || height <= 0) {
+            dirty = false;
+            return;
+        }
+        final Bitmap bitmap = bitmaps.take(width, height);
+        if (bitmap == null) {
+            // a bitmap shown by recent frames is freed by a draw or two, a taken one calls startRender() when given back
+            if (bitmaps.awaitsDraws()) invalidateSelf();
+            return;
+        }
+
+        dirty = false;
+        busy = true;
+        final int length = data.x.values.size();
+        final int modCount = data.modCount;
+        pickedLength = length;
+        pickedModCount = modCount;
+        pick(length, width, height);
+
+        final int generation = this.generation;
+        final float xScale = width - 1; // inclusive bounds, like ChartDrawable
+        ChartPreprocessor.execute(new Runnable() {
+            @Override public void run() {
+                bitmap.eraseColor(Color.TRANSPARENT);
+                series.draw(new Canvas(bitmap), paint, path, xScale, 0, yScales, translateYs);
+                handler.post(new Runnable() {
+                    @Override public void run() {
+                        onRendered(generation, bitmap);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Picks first {@param length} points of visible columns, the same way {@link ChartDrawable} does for the whole range.
+     */
+    private void pick(int length, int width, int height) {
+        Chart.Column[] columns = data.columns;
+        double yMin = Double.POSITIVE_INFINITY;
+        double yMax = Double.NEGATIVE_INFINITY;
+        for (int ci = 0; ci < columns.length; ci++) {
+            if (visible[ci]) {
+                yMin = Math.min(yMin, columns[ci].minValue);
+                yMax = Math.max(yMax, columns[ci].maxValue);
+            }
+        }
+        boolean any = length > 0 && yMin <= yMax;
+
+        int top = (int) chartThickness;
+        int chartHeight = height - 1 - top; // inclusive bounds, like ChartDrawable
+        double yDiff = yMax - yMin;
+        for (int ci = 0; ci < columns.length; ci++) {
+            alphas[ci] = any && visible[ci] ? 255 : 0;
+            Chart.Column column = columns[ci];
+            double colYDiff = column.maxValue - column.minValue;
+            yScales[ci] = (float) (colYDiff == 0 ? 1 : colYDiff / yDiff) * chartHeight;
+            translateYs[ci] = (float) ((yMax - column.maxValue) / yDiff * chartHeight) + top;
+        }
+        geometry.normalizeIfNeeded();
+        series.pick(geometry, data, 0, length - 1, ChartGeometry.pointsPerPx(0, length - 1, width), alphas); // picks nothing if !any
+    }
+
+    private void onRendered(int generation, Bitmap bitmap) {
+        if (generation != this.generation) return;
+        busy = false;
+
+        if (fadeAnimator != null) fadeAnimator.cancel(); // gives previous back
+        previous = current;
+        current = bitmap;
+        if (previous == null) {
+            fade = 255;
+        } else {
+            if (fadeAnimator == null) {
+                fadeAnimator = ValueAnimator.ofInt(0, 255).setDuration(FADE_DURATION);
+                fadeAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+                    @Override public void onAnimationUpdate(ValueAnimator animation) {
+                        fade = (Integer) animation.getAnimatedValue();
+                        invalidateSelf();
+                    }
+                });
+                fadeAnimator.addListener(new AnimatorListenerAdapter() {
+                    @Override public void onAnimationEnd(Animator animation) {
+                        if (previous != null) {
+                            bitmaps.give(previous);
+                            previous = null;
+                            startRender(); // if it was waiting for a bitmap
+                        }
+                    }
+                });
+            }
+            fade = 0;
+            fadeAnimator.start();
+        }
+        startRender(); // something has changed while rendering
+        invalidateSelf();
+    }
+
+    @Override public void setAlpha(int alpha) {
+        this.alpha = alpha;
+        invalidateSelf();
+    }
+
+    @Override public int getAlpha() {
+        return alpha;
+    }
+
+    @Override public void setColorFilter(@Nullable ColorFilter colorFilter) {
+        bitmapPaint.setColorFilter(colorFilter);
+        invalidateSelf();
+    }
+
+    @Nullable @Override public ColorFilter getColorFilter() {
+        return bitmapPaint.getColorFilter();
+    }
+
+    @Override public int getOpacity() {
+        return PixelFormat.TRANSLUCENT;
+    }
+
+}
@@ -0,0 +1,68 @@
+package net.aquadc.tgchart;
+
+import android.graphics.Canvas;
+import android.graphics.Picture;
+import android.os.Build;
+
+import java.util.Arrays;
+
+/**
+ * A part of a drawable which is recorded into a {@link Picture} and replayed
+ * until any of its inputs change, so unchanged layers cost neither measuring nor path filling.
+ * Inputs are just numbers: set them all, then {@link #begin} tells whether a layer must be drawn again.
+ * Hardware canvases can't draw pictures before API 23, there layers are drawn directly every time.
+ */
+final class PictureLayer {
+
+    private final double[] inputs;
+    private final double[] recorded;
+    private final Picture picture;
+    private boolean valid;
+    private Canvas recording;
+
+    PictureLayer(int inputCount) {
+        this.inputs = new double[inputCount];
+        this.recorded = new double[inputCount];
+        this.picture = new Picture();
+    }
+
+    void set(int index, double value) {
+        inputs[index] = value;
+    }
+
+    /**
+     * Forces re-recording on the next frame, e. g. when colours change.
+     */
+    void invalidate() {
+        valid = false;
+    }
+
+    /**
+     * @return a canvas to draw the layer into, or {@code null} if the recorded one is up to date;
+     *         call {@link #end} in both cases
+     */
+    Canvas begin(Canvas target, int width, int height) {
+        if (Build.VERSION.SDK_INT < 23 && target.isHardwareAccelerated()) {
+            valid = false;
+            return target;
+        }
+        if (valid && picture.getWidth() == width && picture.getHeight() == height && Arrays.equals(inputs, recorded)) {
+            return null;
+        }
+        System.arraycopy(inputs, 0, recorded, 0, inputs.length);
+        valid = true;
+        return recording = picture.beginRecording(width, height);
+    }
+
+    /**
+     * Finishes recording, if any, and draws the layer.
+     */
+    void end(Canvas target) {
+        if (recording != null) {
+            picture.endRecording();
+            recording = null;
+        }
+        if (valid) target.drawPicture(picture);
+    }
+
+}
@@ -9,79 +9,155 @@ import android.os.Bundle;
 import android.os.Parcelable;
 import android.util.Property;
 import android.view.MotionEvent;
+import android.view.VelocityTracker;
 import android.view.View;
+import android.view.ViewConfiguration;
+import android.view.animation.DecelerateInterpolator;
 import androidx.annotation.ColorInt;
 import androidx.annotation.Px;
 
 
 public final class RangeBar extends View {
 
+    private static final int FLING_DECELERATION = 4000; // dp/s², a quadratic ease-out decelerates constantly
+
     private final Paint paint = new Paint();
 
+    // the listener hears once per frame, and only about the latest range; fling also runs on frames
+    private final FrameAnimator animator;
+    private final FrameAnimator.Channel fling;
+    private boolean flinging;
+    private boolean notifyPending;
+    private VelocityTracker velocityTracker;
+
     public RangeBar(Context context) {
         super(context);
+        animator = new FrameAnimator(new Runnable() {
+            @Override public void run() {
+                onFrame();
+            }
+        });
+        fling = animator.channel(0, 0, new DecelerateInterpolator());
     }
 
-    // interactions
-
-    private int max = 1000;
-    public void setMax(int max) {
-        if (max < 1) throw new IllegalArgumentException("max must be > 0, given " + max);
-        this.max = max;
-        setSelectedRangeInternal(0, max - 1);
-    }
+    // interactions; selection is in [0; 1], so it's as precise as doubles are, not as pixels are
 
-    private int selectionStart = 0;
-    private int selectionEnd = max;
+    private double selectionStart = 0;
+    private double selectionEnd = 1;
 
     private SelectionChangeListener listener;
 
-    public void setSelectedRange(int selectionStart, int selectionEnd) {
-        if (selectionStart < 0 || selectionStart >= max || selectionEnd < 0 || selectionEnd >= max) {
-            throw new IllegalArgumentException("selection must be in [0; " + selectionEnd + "), given " + selectionStart + "; " + selectionEnd);
+    /**
+     * Selects a range, e. g. zoomed by a gesture on the chart itself. It may be narrower than the bar lets to drag it.
+     */
+    public void setSelectedRange(double selectionStart, double selectionEnd) {
+        if (!(selectionStart >= 0 && selectionEnd <= 1)) {
+            throw new IllegalArgumentException("selection must be within [0; 1], given [" + selectionStart + "; " + selectionEnd + "]");
         }
-        if (selectionStart > selectionEnd) {
-            throw new IllegalArgumentException("selectionStart must be <= selectionEnd, given [" + selectionStart + "; " + selectionEnd + ")");
+        if (!(selectionStart < selectionEnd)) {
+            throw new IllegalArgumentException("selectionStart must be < selectionEnd, given [" + selectionStart + "; " + selectionEnd + "]");
         }
+        stopFling();
         setSelectedRangeInternal(selectionStart, selectionEnd);
     }
-    private void setSelectedRangeInternal(int selectionStart, int selectionEnd) {
-        if (this.selectionStart != selectionStart || this.selectionEnd != selectionEnd) {
-            this.selectionStart = selectionStart;
-            this.selectionEnd = selectionEnd;
-            invalidate();
-            if (listener != null) {
-                listener.onSelectedRangeChanged(selectionStart, selectionEnd);
-            }
+    public double getSelectionStart() {
+        return selectionStart;
+    }
+    public double getSelectionEnd() {
+        return selectionEnd;
+    }
+    private void setSelectedRangeInternal(double selectionStart, double selectionEnd) {
+        if (applyRange(selectionStart, selectionEnd) && listener != null && !notifyPending) {
+            notifyPending = true;
+            animator.requestFrame();
         }
     }
+    private boolean applyRange(double selectionStart, double selectionEnd) {
+        if (this.selectionStart == selectionStart && this.selectionEnd == selectionEnd) return false;
+        this.selectionStart = selectionStart;
+        this.selectionEnd = selectionEnd;
+        invalidate();
+        return true;
+    }
+    private void onFrame() {
+        if (flinging) {
+            double start = fling.value();
+            // we're already in a frame, the listener will hear below, don't request another one
+            notifyPending |= applyRange(start, start + selectionEnd - selectionStart) && listener != null;
+            flinging = fling.isRunning();
+        }
+        if (notifyPending) {
+            notifyPending = false;
+            if (listener != null) listener.onSelectedRangeChanged(selectionStart, selectionEnd);
+        }
+    }
+
+    @Override protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        animator.cancel();
+        flinging = false;
+    }
 
     @Override protected Parcelable onSaveInstanceState() {
         Bundle ss = new Bundle();
         ss.putParcelable("p", super.onSaveInstanceState());
-        ss.putInt("s", selectionStart);
-        ss.putInt("e", selectionEnd);
+        ss.putDouble("s", selectionStart);
+        ss.putDouble("e", selectionEnd);
         return ss;
     }
     @Override protected void onRestoreInstanceState(Parcelable state) {
         Bundle ss = (Bundle) state;
         super.onRestoreInstanceState(ss.getParcelable("p"));
-        setSelectedRangeInternal(Math.min(ss.getInt("s"), max), Math.min(ss.getInt("e"), max));
+        setSelectedRangeInternal(ss.getDouble("s", 0), ss.getDouble("e", 1));
     }
 
     @Override public boolean onTouchEvent(MotionEvent event) {
         if (!isEnabled()) return false;
 
         int action = event.getActionMasked();
+        if (action == MotionEvent.ACTION_DOWN) {
+            stopFling();
+            if (velocityTracker == null) velocityTracker = VelocityTracker.obtain();
+            else velocityTracker.clear();
+        }
+        if (velocityTracker != null) velocityTracker.addMovement(event);
+
         if (action == MotionEvent.ACTION_DOWN || action == MotionEvent.ACTION_MOVE) {
             touchAt(event.getX());
             return true;
         } else {
+            if (action == MotionEvent.ACTION_UP && handle == 0 && !Float.isNaN(prevX)) {
+                startFling();
+            }
+            if (velocityTracker != null) {
+                velocityTracker.recycle();
+                velocityTracker = null;
+            }
             prevX = Float.NaN;
             return false;
         }
     }
 
+    private void startFling() {
+        ViewConfiguration configuration = ViewConfiguration.get(getContext());
+        velocityTracker.computeCurrentVelocity(1000, configuration.getScaledMaximumFlingVelocity());
+        float velocity = velocityTracker.getXVelocity(); // px/s
+        if (Math.abs(velocity) < configuration.getScaledMinimumFlingVelocity()) return;
+
+        float deceleration = FLING_DECELERATION * getResources().getDisplayMetrics().density;
+        float seconds = Math.abs(velocity) / deceleration;
+        double distance = velocity * seconds / 2 / getInnerWidth();
+        double windowSize = selectionEnd - selectionStart;
+        double target = Math.max(0, Math.min(1 - windowSize, selectionStart + distance));
+        fling.set(selectionStart);
+        fling.animateTo(target, (int) (seconds * 1000));
+        flinging = fling.isRunning(); // not if already at the edge
+    }
+    private void stopFling() {
+        fling.set(fling.value());
+        flinging = false;
+    }
+
     private float prevX = Float.NaN;
     private int handle = 0;
     private void touchAt(float x) {
@@ -99,32 +175,38 @@ public final class RangeBar extends View {
             int minWindowSize = 2 * borders.left + 2 * borders.right;
 
             if (handle == 0) {
-                int distance = (int) ((x - prevX) / width * max);
+                double distance = (x - prevX) / width;
                 if (selectionStart + distance < 0) {
                     distance = -selectionStart;
-                } else if (selectionEnd + distance > max) {
-                    distance = max - selectionEnd;
+                } else if (selectionEnd + distance > 1) {
+                    distance = 1 - selectionEnd;
                 }
                 setSelectedRangeInternal(selectionStart + distance, selectionEnd + distance);
             } else {
                 boolean left = handle == -1;
-                int newSelection = selection(left, x, minWindowSize);
-                newSelection = left ? Math.min(selectionEnd-minWindowSize, newSelection) : Math.max(selectionStart+minWindowSize, newSelection);
+                double minWindow = (double) minWindowSize / width;
+                double newSelection = selection(left, x, minWindowSize);
+                newSelection = left ? Math.min(selectionEnd - minWindow, newSelection) : Math.max(selectionStart + minWindow, newSelection);
+                newSelection = Math.max(0, Math.min(1, newSelection)); // a zoomed window may be narrower than minWindow
                 setSelectedRangeInternal(left ? newSelection : selectionStart, left ? selectionEnd : newSelection);
             }
         }
         prevX = x;
     }
-    private int selection(boolean left, float x, int minDistance) {
+    private double selection(boolean left, float x, int minDistance) {
         x -= getPaddingLeft();
         int width = getInnerWidth();
         float normalX = left ? Math.min(x, width - minDistance) : Math.max(x, minDistance);
         normalX = Math.min(width, Math.max(0, normalX));
-        return (int) (normalX / width * max);
+        return (double) normalX / width;
     }
 
     public interface SelectionChangeListener {
-        void onSelectedRangeChanged(int selectionStart, int selectionEnd);
+        /**
+         * @param selectionStart fraction of the whole range, in [0; 1]
+         * @param selectionEnd   fraction of the whole range, in (selectionStart; 1]
+         */
+        void onSelectedRangeChanged(double selectionStart, double selectionEnd);
     }
 
     public void setSelectionChangeListener(SelectionChangeListener listener) {
@@ -178,19 +260,26 @@ public final class RangeBar extends View {
         super.onDraw(canvas);
 
         int height = getHeight();
-        paint.setColor(dimColour);
+        Rect windowBorders = this.windowBorders;
         float leftDimEnd = selectionToPx(selectionStart);
+        float rightDimStart = selectionToPx(selectionEnd);
+        float minWindowWidth = windowBorders.left + windowBorders.right;
+        if (rightDimStart - leftDimEnd < minWindowWidth) { // zoomed deeper than a pixel, keep borders apart
+            float center = (leftDimEnd + rightDimStart) / 2;
+            leftDimEnd = center - minWindowWidth / 2;
+            rightDimStart = center + minWindowWidth / 2;
+        }
+
+        paint.setColor(dimColour);
         if (selectionStart > 0) {
             canvas.drawRect(getPaddingLeft(), 0, leftDimEnd, height, paint);
         }
-        float rightDimStart = selectionToPx(selectionEnd);
         int rightPad = getPaddingRight();
-        if (selectionEnd < max - 1) {
+        if (selectionEnd < 1) {
             canvas.drawRect(rightDimStart, 0, getWidth() - rightPad, height, paint);
         }
 
         paint.setColor(windowBorderColour);
-        Rect windowBorders = this.windowBorders;
         float leftWindowBorderEnd = leftDimEnd + windowBorders.left;
         canvas.drawRect(leftDimEnd, 0, leftWindowBorderEnd, height, paint);
         float rightWindowBorderStart = rightDimStart - windowBorders.right;
@@ -201,8 +290,8 @@ public final class RangeBar extends View {
 
     // common util
 
-    private float selectionToPx(int selectionPerMille) {
-        return getPaddingLeft() + getInnerWidth() * selectionPerMille / max;
+    private float selectionToPx(double selection) {
+        return (float) (getPaddingLeft() + getInnerWidth() * selection);
     }
 
     private int getInnerWidth() {
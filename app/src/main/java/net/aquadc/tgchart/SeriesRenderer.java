@@ -0,0 +1,201 @@
+package net.aquadc.tgchart;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.os.Handler;
+import android.os.Looper;
+import androidx.annotation.MainThread;
+
+/**
+ * Renders series of a {@link ChartDrawable} into offscreen bitmaps on a background thread,
+ * so a frame costs a bitmap blit instead of stroking paths on the main thread.
+ * There are three bitmaps: the front one is shown, another one is rendered into,
+ * and the previous front one waits until frames which have drawn it are gone, see {@link BitmapPool}.
+ * Only the latest requested frame gets rendered, the ones requested while busy are skipped.
+ * The front bitmap is stretched to the current range until a fresh one arrives, so it lags without jumping.
+ * Points are picked on the main thread, the worker only strokes them, see {@link SeriesSnapshot}.
+ */
+@MainThread final class SeriesRenderer {
+
+    private final Chart data;
+    private final ChartGeometry geometry;
+    private final float chartThickness;
+    private final Runnable invalidate;
+    private final Handler handler;
+    final Paint bitmapPaint;
+
+    // used by a single render at a time, so they are shared between renders
+    private final Paint paint;
+    private final Path path;
+
+    private final BitmapPool bitmaps = new BitmapPool(3);
+    private Bitmap front;
+    // requested but not started yet, being rendered, and shown by the front bitmap; swapped like ChartDrawable.FrameState
+    private Frame pending, rendering, shown;
+    private Frame latest; // one of above, or null
+    private boolean busy;
+    private int generation; // renders of older generations are ignored
+
+    SeriesRenderer(Chart data, ChartGeometry geometry, float chartThickness, Runnable invalidate) {
+        this.data = data;
+        this.geometry = geometry;
+        this.chartThickness = chartThickness;
+        this.invalidate = invalidate;
+        this.handler = new Handler(Looper.getMainLooper());
+        this.bitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        this.paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        this.paint.setStyle(Paint.Style.STROKE);
+        this.paint.setStrokeWidth(chartThickness);
+        this.path = new Path();
+        this.pending = new Frame(data);
+        this.rendering = new Frame(data);
+        this.shown = new Frame(data);
+    }
+
+    /**
+     * Asks for the frame to be rendered. Does nothing if it is already rendered or on its way.
+     * @param pointsPerPx how many points fall into a pixel, see {@link SeriesSnapshot#pick}
+     * @param alphas      alpha of each column in lower 8 bits
+     */
+    void request(int width, int height, ChartDrawable.FrameState state, int chartHeight, float pointsPerPx, int[] alphas) {
+        int length = data.x.values.size();
+        int modCount = data.modCount;
+        if (latest != null && latest.matches(width, height, state, chartHeight, length, modCount, alphas)) {
+            return;
+        }
+        Frame frame = pending;
+        frame.set(width, height, state, chartHeight, length, modCount, alphas);
+        frame.series.pick(geometry, data, state.firstIndex, state.lastIndex, pointsPerPx, alphas);
+        latest = frame;
+    }
+
+    private void start() {
+        final Frame frame = pending;
+        final Bitmap bitmap = bitmaps.take(frame.width, frame.height);
+        if (bitmap == null) {
+            // a bitmap shown by recent frames is freed by a draw or two, a taken one is given back by onRendered()
+            if (bitmaps.awaitsDraws()) invalidate.run();
+            return;
+        }
+
+        pending = rendering;
+        rendering = frame;
+        busy = true;
+        final int generation = this.generation;
+        ChartPreprocessor.execute(new Runnable() {
+            @Override public void run() {
+                bitmap.eraseColor(Color.TRANSPARENT);
+                frame.series.draw(new Canvas(bitmap), paint, path, frame.xScale, frame.translateX, frame.yScales, frame.translateYs);
+                handler.post(new Runnable() {
+                    @Override public void run() {
+                        onRendered(generation, bitmap);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onRendered(int generation, Bitmap bitmap) {
+        if (generation != this.generation) return;
+        busy = false;
+        if (front != null) bitmaps.give(front); // reused when frames which have drawn it are gone
+        front = bitmap;
+        Frame frame = shown;
+        shown = rendering;
+        rendering = frame;
+        invalidate.run();
+    }
+
+    /**
+     * Blits the front bitmap, scaled and translated from the range it was rendered for to the current one,
+     * and starts rendering the latest requested frame, if any.
+     */
+    void drawFront(Canvas canvas, float xScale, float translateX, double yMin, double yMax, int chartHeight) {
+        bitmaps.nextDraw();
+        if (!busy && latest == pending) start();
+
+        Bitmap front = this.front;
+        if (front == null) return;
+        Frame frame = shown;
+        float sx = xScale / frame.xScale;
+        // rendered y = (frame.yMax - v) / frame.yDiff * frame.chartHeight + thickness, we need the same for current limits
+        int thickness = (int) chartThickness;
+        double yDiff = yMax - yMin;
+        float sy = (float) ((frame.yMax - frame.yMin) / frame.chartHeight * chartHeight / yDiff);
+        float ty = (float) ((yMax - frame.yMax) / yDiff * chartHeight) + thickness - thickness * sy;
+        if (!(sy > 0 && sy < Float.POSITIVE_INFINITY)) { // flat line, nothing to scale
+            sy = 1;
+            ty = 0;
+        }
+        canvas.save();
+        canvas.translate(translateX - frame.translateX * sx, ty);
+        canvas.scale(sx, sy);
+        canvas.drawBitmap(front, 0, 0, bitmapPaint);
+        canvas.restore();
+        bitmaps.drawn(front);
+    }
+
+    /**
+     * Drops bitmaps and ignores renders which are in progress.
+     */
+    void release() {
+        generation++;
+        busy = false;
+        front = null;
+        latest = null;
+        bitmaps.clear();
+    }
+
+    private static final class Frame {
+        int width, height; // of the bitmap
+        int from, to;
+        int length, modCount;
+        float xScale, translateX;
+        double yMin, yMax;
+        int chartHeight;
+        final int[] alphas;
+        final float[] yScales, translateYs;
+        final SeriesSnapshot series;
+        Frame(Chart data) {
+            int colCount = data.columns.length;
+            alphas = new int[colCount];
+            yScales = new float[colCount];
+            translateYs = new float[colCount];
+            series = new SeriesSnapshot(data);
+        }
+        void set(int width, int height, ChartDrawable.FrameState state, int chartHeight, int length, int modCount, int[] alphas) {
+            this.width = width;
+            this.height = height;
+            this.from = state.firstIndex;
+            this.to = state.lastIndex;
+            this.length = length;
+            this.modCount = modCount;
+            this.xScale = state.xScale;
+            this.translateX = state.translateX;
+            this.yMin = state.yMin;
+            this.yMax = state.yMax;
+            this.chartHeight = chartHeight;
+            for (int i = 0; i < alphas.length; i++) {
+                this.alphas[i] = alphas[i] & 0xFF;
+            }
+            System.arraycopy(state.yScales, 0, yScales, 0, yScales.length);
+            System.arraycopy(state.translateYs, 0, translateYs, 0, translateYs.length);
+        }
+        boolean matches(int width, int height, ChartDrawable.FrameState state, int chartHeight, int length, int modCount, int[] alphas) {
+            if (width != this.width || height != this.height || state.firstIndex != from || state.lastIndex != to
+                    || length != this.length || modCount != this.modCount
+                    || state.xScale != xScale || state.translateX != translateX
+                    || state.yMin != yMin || state.yMax != yMax || chartHeight != this.chartHeight) {
+                return false;
+            }
+            for (int i = 0; i < alphas.length; i++) {
+                if ((alphas[i] & 0xFF) != this.alphas[i]) return false;
+            }
+            return true;
+        }
+    }
+
+}
@@ -0,0 +1,135 @@
+package net.aquadc.tgchart;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import androidx.annotation.MainThread;
+
+import java.util.Arrays;
+
+/**
+ * Points of series to be stroked, picked from a {@link Chart} on the main thread.
+ * It doesn't refer to chart data, so it can be stroked on a background thread while the chart is appended to or rolled up.
+ * Points are normalized, like in {@link ChartGeometry}, and transformed to pixels only when stroked.
+ * Buffers grow as needed and are reused by subsequent picks.
+ */
+final class SeriesSnapshot {
+
+    private final int[] colours;
+    private final int[] alphas; // 0..255, columns with zero alpha have no points picked
+    private final float[][] points; // x, y pairs of each column
+    private final int[] sizes; // number of floats in points
+
+    // the column being picked
+    private float[] buf;
+    private int size;
+
+    SeriesSnapshot(Chart data) {
+        Chart.Column[] columns = data.columns;
+        int colCount = columns.length;
+        colours = new int[colCount];
+        for (int ci = 0; ci < colCount; ci++) {
+            colours[ci] = columns[ci].colour;
+        }
+        alphas = new int[colCount];
+        points = new float[colCount][];
+        sizes = new int[colCount];
+    }
+
+    /**
+     * Picks points in [{@param from}; {@param to}].
+     * Where a whole pyramid bucket is visible, only its first, min, max, and last points are picked.
+     * @param pointsPerPx how many points fall into a pixel, it chooses the pyramid level
+     * @param alphas      alpha of each column in lower 8 bits
+     */
+    @MainThread void pick(ChartGeometry geometry, Chart data, int from, int to, float pointsPerPx, int[] alphas) {
+        Chart.Column[] columns = data.columns;
+        for (int ci = 0; ci < columns.length; ci++) {
+            int alpha = alphas[ci] & 0xFF;
+            this.alphas[ci] = alpha;
+            buf = points[ci];
+            size = 0;
+            if (alpha != 0) {
+                if (Float.isNaN(geometry.normalizedX(from))) { // a single point
+                    point(0f, 0f);
+                    point(1f, 0f);
+                } else {
+                    MinMaxPyramid pyramid = columns[ci].pyramid();
+                    pick(geometry, columns[ci], from, to, pyramid, pyramid.levelFor(pointsPerPx));
+                }
+            }
+            points[ci] = buf;
+            sizes[ci] = size;
+        }
+        buf = null;
+    }
+
+    /**
+     * @param level pyramid level, or -1 to pick every point
+     */
+    private void pick(ChartGeometry geometry, Chart.Column column, int from, int to, MinMaxPyramid pyramid, int level) {
+        point(geometry.normalizedX(from), ChartGeometry.normalizedY(column, from));
+
+        int i = from + 1;
+        if (level >= 0) {
+            int shift = MinMaxPyramid.bucketShift(level);
+            int bucket = (i + (1 << shift) - 1) >> shift; // first bucket starting at or after i
+            int lastBucket = ((to + 1) >> shift) - 1; // last bucket ending at or before 'to'
+            if (bucket <= lastBucket) {
+                for (int bucketStart = bucket << shift; i < bucketStart; i++) {
+                    point(geometry.normalizedX(i), ChartGeometry.normalizedY(column, i));
+                }
+                for (; bucket <= lastBucket; bucket++) {
+                    int first = bucket << shift;
+                    int last = first + (1 << shift) - 1;
+                    int min = pyramid.bucketMinIndex(level, bucket);
+                    int max = pyramid.bucketMaxIndex(level, bucket);
+                    int lo = Math.min(min, max), hi = Math.max(min, max);
+                    point(geometry.normalizedX(first), ChartGeometry.normalizedY(column, first));
+                    if (lo != first) point(geometry.normalizedX(lo), ChartGeometry.normalizedY(column, lo));
+                    if (hi != lo) point(geometry.normalizedX(hi), ChartGeometry.normalizedY(column, hi));
+                    if (last != hi) point(geometry.normalizedX(last), ChartGeometry.normalizedY(column, last));
+                }
+                i = bucket << shift;
+            }
+        }
+        for (; i <= to; i++) {
+            point(geometry.normalizedX(i), ChartGeometry.normalizedY(column, i));
+        }
+    }
+
+    private void point(float x, float y) {
+        float[] buf = this.buf;
+        int size = this.size;
+        if (buf == null || buf.length < size + 2) {
+            this.buf = buf = buf == null ? new float[256] : Arrays.copyOf(buf, 2 * buf.length);
+        }
+        buf[size] = x;
+        buf[size + 1] = y;
+        this.size = size + 2;
+    }
+
+    /**
+     * Strokes picked points. May be called on any thread, but not concurrently with {@link #pick}.
+     * @param yScales     normalized Y of each column -> pixels, see {@link ChartDrawable.FrameState}
+     * @param translateYs the same
+     */
+    void draw(Canvas canvas, Paint paint, Path path,
+              float xScale, float translateX, float[] yScales, float[] translateYs) {
+        for (int ci = 0; ci < colours.length; ci++) {
+            int size = sizes[ci];
+            if (size == 0) continue;
+            float[] points = this.points[ci];
+            float yScale = yScales[ci], translateY = translateYs[ci];
+            path.moveTo(points[0] * xScale + translateX, points[1] * yScale + translateY);
+            for (int i = 2; i < size; i += 2) {
+                path.lineTo(points[i] * xScale + translateX, points[i + 1] * yScale + translateY);
+            }
+            paint.setColor(colours[ci]);
+            paint.setAlpha(alphas[ci]);
+            canvas.drawPath(path, paint);
+            path.rewind();
+        }
+    }
+
+}
@@ -0,0 +1,98 @@
+package net.aquadc.tgchart;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Random;
+
+/**
+ * Charts for benchmarks, in JSON: bundled ones are read from app assets (see tgchart.assets property),
+ * synthetic ones are named like "even:1000000" or "uneven:1000000", i. e. X spacing and number of points.
+ * Synthetic charts are seeded, so runs are comparable.
+ */
+final class BenchmarkData {
+
+    static final long SEED = 42;
+    private static final int SYNTHETIC_COLUMNS = 4;
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000;
+
+    private BenchmarkData() {}
+
+    static byte[] json(String source) throws IOException {
+        int colon = source.indexOf(':');
+        if (colon < 0) return read(source);
+
+        String spacing = source.substring(0, colon);
+        int points = Integer.parseInt(source.substring(colon + 1));
+        switch (spacing) {
+            case "even": return synthetic(points, true);
+            case "uneven": return synthetic(points, false);
+            default: throw new IllegalArgumentException("unknown source: " + source);
+        }
+    }
+
+    /**
+     * @return the chart with the most points, parsed
+     */
+    static Chart largestChart(String source) throws IOException {
+        byte[] json = json(source);
+        JsonCharts charts = new JsonCharts(json, json.length);
+        Chart largest = null;
+        for (int i = 0; i < charts.size(); i++) {
+            Chart chart = charts.parse(i);
+            if (largest == null || chart.x.values.size() > largest.x.values.size()) largest = chart;
+        }
+        return largest;
+    }
+
+    private static byte[] read(String name) throws IOException {
+        File file = new File(System.getProperty("tgchart.assets", "../app/src/main/assets"), name);
+        InputStream in = new FileInputStream(file);
+        try {
+            return JsonCharts.readAll(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    // same format as bundled charts, Y values are random walks
+    private static byte[] synthetic(int points, boolean evenX) {
+        Random random = new Random(SEED);
+        StringBuilder sb = new StringBuilder(points * (SYNTHETIC_COLUMNS + 1) * 12);
+        sb.append("[{\"columns\":[[\"x\"");
+        long x = 1542412800000L;
+        for (int i = 0; i < points; i++) {
+            sb.append(',').append(x);
+            x += evenX ? DAY_MILLIS : 1 + random.nextInt((int) (2 * DAY_MILLIS));
+        }
+        sb.append(']');
+        for (int c = 0; c < SYNTHETIC_COLUMNS; c++) {
+            sb.append(",[\"y").append(c).append('"');
+            long y = 1000;
+            for (int i = 0; i < points; i++) {
+                y = Math.max(0, y + random.nextInt(201) - 100);
+                sb.append(',').append(y);
+            }
+            sb.append(']');
+        }
+        sb.append("],\"types\":{\"x\":\"x\"");
+        for (int c = 0; c < SYNTHETIC_COLUMNS; c++) {
+            sb.append(",\"y").append(c).append("\":\"line\"");
+        }
+        sb.append("},\"names\":{");
+        for (int c = 0; c < SYNTHETIC_COLUMNS; c++) {
+            if (c > 0) sb.append(',');
+            sb.append("\"y").append(c).append("\":\"#").append(c).append('"');
+        }
+        sb.append("},\"colors\":{");
+        for (int c = 0; c < SYNTHETIC_COLUMNS; c++) {
+            if (c > 0) sb.append(',');
+            sb.append("\"y").append(c).append("\":\"#3DC23F\"");
+        }
+        sb.append("}}]");
+        return sb.toString().getBytes(Charset.forName("US-ASCII"));
+    }
+
+}
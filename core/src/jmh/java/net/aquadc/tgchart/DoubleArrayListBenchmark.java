@@ -0,0 +1,51 @@
+package net.aquadc.tgchart;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Growing and reading {@link DoubleArrayList}, which backs appendable charts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime) @OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1) @Measurement(iterations = 5, time = 1) @Fork(1)
+public class DoubleArrayListBenchmark {
+
+    @Param({ "1000", "1000000" })
+    public int size;
+
+    private DoubleArrayList filled;
+
+    @Setup public void setUp() {
+        filled = add();
+    }
+
+    @Benchmark public DoubleArrayList add() {
+        DoubleArrayList list = new DoubleArrayList();
+        for (int i = 0; i < size; i++) {
+            list.add(i);
+        }
+        return list;
+    }
+
+    @Benchmark public double get() {
+        DoubleArrayList list = filled;
+        double sum = 0;
+        for (int i = 0, size = list.size(); i < size; i++) {
+            sum += list.get(i);
+        }
+        return sum;
+    }
+
+}
@@ -0,0 +1,103 @@
+package net.aquadc.tgchart;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-frame math of the largest chart of a source: X normalization,
+ * visible window search, and Y bounds of random windows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime) @OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1) @Measurement(iterations = 5, time = 1) @Fork(1)
+public class GeometryBenchmark {
+
+    private static final int QUERIES = 1024;
+
+    @Param({ "chart_data.json", "chart_data_omg.json", "even:1000000", "uneven:1000000" })
+    public String source;
+
+    private Chart chart; // normalized once, then queried
+    private ChartGeometry geometry;
+    private Chart unnormalized; // normalized from scratch every time
+
+    private final float[] positions = new float[QUERIES];
+    private final int[] froms = new int[QUERIES];
+    private final int[] tos = new int[QUERIES];
+    private int[] flags;
+    private final double[] bounds = new double[2];
+
+    @Setup public void setUp() throws IOException {
+        chart = BenchmarkData.largestChart(source);
+        unnormalized = BenchmarkData.largestChart(source);
+        for (Chart.Column column : chart.columns) {
+            column.pyramid(); // built on a background thread before showing a chart
+        }
+        geometry = ChartGeometry.acquire(chart);
+        geometry.normalizeIfNeeded();
+
+        Random random = new Random(BenchmarkData.SEED);
+        int length = chart.x.values.size();
+        for (int i = 0; i < QUERIES; i++) {
+            positions[i] = random.nextFloat();
+            int from = random.nextInt(length);
+            froms[i] = from;
+            tos[i] = from + random.nextInt(length - from);
+        }
+        flags = new int[chart.columns.length];
+        Arrays.fill(flags, 1);
+    }
+
+    @TearDown public void tearDown() {
+        geometry.release();
+    }
+
+    @Benchmark public Object normalize() {
+        Chart chart = unnormalized;
+        chart.prepared = null; // given back by the previous release()
+        ChartGeometry geometry = ChartGeometry.acquire(chart);
+        geometry.normalizeIfNeeded();
+        geometry.release();
+        return chart.prepared;
+    }
+
+    @Benchmark @OperationsPerInvocation(QUERIES) public int indexOfClosest() {
+        ChartGeometry geometry = this.geometry;
+        float[] positions = this.positions;
+        int sum = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            sum += geometry.indexOfClosest(positions[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark @OperationsPerInvocation(QUERIES) public double yBounds() {
+        Chart chart = this.chart;
+        double[] bounds = this.bounds;
+        double sum = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            bounds[0] = Double.MAX_VALUE;
+            bounds[1] = -Double.MAX_VALUE;
+            chart.widenYBounds(froms[i], tos[i], flags, 1, bounds);
+            sum += bounds[1] - bounds[0];
+        }
+        return sum;
+    }
+
+}
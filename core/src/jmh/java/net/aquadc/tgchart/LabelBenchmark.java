@@ -0,0 +1,92 @@
+package net.aquadc.tgchart;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Labels of the largest chart of a source: X and Y values formatting, and guideline steps for random windows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime) @OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1) @Measurement(iterations = 5, time = 1) @Fork(1)
+public class LabelBenchmark {
+
+    private static final int QUERIES = 1024;
+    private static final int GUIDELINES = 6; // approximately, on a phone screen
+
+    @Param({ "chart_data.json", "chart_data_omg.json", "even:1000000", "uneven:1000000" })
+    public String source;
+
+    private final ValueFormatter dateFormatter = new DateFormatter("E, MMM d", Locale.US);
+    private final ValueFormatter countFormatter = new CountFormatter();
+    private final StringBuilder sb = new StringBuilder();
+
+    private final double[] xValues = new double[QUERIES];
+    private final double[] yValues = new double[QUERIES];
+    private final double[] steps = new double[QUERIES];
+
+    @Setup public void setUp() throws IOException {
+        Chart chart = BenchmarkData.largestChart(source);
+        int length = chart.x.values.size();
+        int[] flags = new int[chart.columns.length];
+        flags[0] = 1;
+        double[] bounds = new double[2];
+        Random random = new Random(BenchmarkData.SEED);
+        for (int i = 0; i < QUERIES; i++) {
+            xValues[i] = chart.x.values.get(random.nextInt(length));
+            Chart.Column column = chart.columns[random.nextInt(chart.columns.length)];
+            yValues[i] = column.values.get(random.nextInt(length));
+
+            int from = random.nextInt(length);
+            bounds[0] = Double.MAX_VALUE;
+            bounds[1] = -Double.MAX_VALUE;
+            chart.widenYBounds(from, from + random.nextInt(length - from), flags, 1, bounds);
+            double step = (bounds[1] - bounds[0]) / GUIDELINES;
+            steps[i] = step > 0 ? step : 1;
+        }
+    }
+
+    @Benchmark @OperationsPerInvocation(QUERIES) public int formatDate() {
+        return format(dateFormatter, xValues);
+    }
+
+    @Benchmark @OperationsPerInvocation(QUERIES) public int formatCount() {
+        return format(countFormatter, yValues);
+    }
+
+    private int format(ValueFormatter formatter, double[] values) {
+        StringBuilder sb = this.sb;
+        int length = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            formatter.formatValueInto(sb, values[i]);
+            length += sb.length();
+            sb.setLength(0);
+        }
+        return length;
+    }
+
+    @Benchmark @OperationsPerInvocation(QUERIES) public double niceStep() {
+        double[] steps = this.steps;
+        double sum = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            sum += ChartGeometry.niceStep(steps[i]);
+        }
+        return sum;
+    }
+
+}
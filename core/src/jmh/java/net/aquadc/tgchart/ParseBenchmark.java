@@ -0,0 +1,47 @@
+package net.aquadc.tgchart;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON → {@link Chart}: the structural pass which is done before showing anything, and parsing of every chart.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime) @OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1) @Measurement(iterations = 5, time = 1) @Fork(1)
+public class ParseBenchmark {
+
+    @Param({ "chart_data.json", "chart_data_omg.json", "even:1000000", "uneven:1000000" })
+    public String source;
+
+    private byte[] json;
+
+    @Setup public void setUp() throws IOException {
+        json = BenchmarkData.json(source);
+    }
+
+    @Benchmark public void index(Blackhole bh) throws IOException {
+        bh.consume(new JsonCharts(json, json.length));
+    }
+
+    @Benchmark public void parse(Blackhole bh) throws IOException {
+        JsonCharts charts = new JsonCharts(json, json.length);
+        for (int i = 0, size = charts.size(); i < size; i++) {
+            bh.consume(charts.parse(i));
+        }
+    }
+
+}
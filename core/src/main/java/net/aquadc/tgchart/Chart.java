@@ -0,0 +1,258 @@
+package net.aquadc.tgchart;
+
+
+import androidx.annotation.ColorInt;
+
+import java.nio.IntBuffer;
+
+public final class Chart {
+
+    public final Column x;
+    public final Column[] columns;
+    private double xStride;
+    /** Incremented when existing points change, e. g. get rolled up by {@link RollingChart}. Appending is not a change. */
+    int modCount;
+    private static final int CHANGES = 8; // a power of two
+    private final int[] changedFrom = new int[CHANGES]; // [modCount % CHANGES]: the first point changed then
+    /** Set if this is a {@link RollingChart#chart}. */
+    RollingChart rolling;
+    /** Shared by drawables, see {@link ChartGeometry#acquire}. */
+    ChartGeometry geometry;
+    /** Derived data built in advance and published at once, see {@link ChartPreprocessor} and {@link #takePrepared}. */
+    volatile Prepared prepared;
+
+    public Chart(Column x, Column[] columns) {
+        this(x, columns, strideOf(x.values));
+    }
+
+    /**
+     * @param xStride already known X stride (or NaN), must be the same {@link #strideOf} would return
+     */
+    Chart(Column x, Column[] columns, double xStride) {
+        this.x = x;
+        this.columns = columns;
+        this.xStride = xStride;
+    }
+
+    /**
+     * @return distance between neighbouring X values if they are evenly spaced, NaN otherwise.
+     *         May become NaN after {@link #append}
+     */
+    public double xStride() {
+        return xStride;
+    }
+
+    static double strideOf(ColumnValues values) {
+        if (values instanceof ColumnValues.Stride) return ((ColumnValues.Stride) values).stride;
+        int length = values.size();
+        if (length < 2) return Double.NaN;
+        double first = values.get(0);
+        double stride = values.get(1) - first;
+        if (!(stride > 0)) return Double.NaN;
+        for (int i = 2; i < length; i++) {
+            if (values.get(i) != first + i * stride) return Double.NaN;
+        }
+        return stride;
+    }
+
+    /**
+     * Marks points from {@param from} on as changed.
+     */
+    void changed(int from) {
+        changedFrom[++modCount & (CHANGES - 1)] = from;
+    }
+
+    /**
+     * @return index of the first point changed after {@link #modCount} was {@param modCount},
+     *         {@link Integer#MAX_VALUE} if nothing was changed, or 0 if it was too long ago to know
+     */
+    int changedSince(int modCount) {
+        int changes = this.modCount - modCount;
+        if (changes < 0 || changes > CHANGES) return 0;
+        int from = Integer.MAX_VALUE;
+        for (int m = modCount + 1; m <= this.modCount; m++) {
+            from = Math.min(from, changedFrom[m & (CHANGES - 1)]);
+        }
+        return from;
+    }
+
+    /**
+     * @return a chart with the same data which can be {@link #append}ed to
+     */
+    public static Chart appendable(Chart chart) {
+        Column[] columns = new Column[chart.columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = chart.columns[i].growable();
+        }
+        return new Chart(chart.x.growable(), columns, chart.xStride);
+    }
+
+    /**
+     * Adds a point to the end of the chart: O(log n) per column.
+     * A {@link RollingChart#chart} rolls old points up, see {@link RollingChart#append}.
+     * Not thread-safe, call it on the thread which draws the chart, and invalidate drawables afterwards.
+     * @param x  X value, must not be less than the last one
+     * @param ys Y value for each column
+     */
+    public void append(double x, double... ys) {
+        if (rolling != null) {
+            rolling.append(x, ys);
+            return;
+        }
+        if (!(this.x.values instanceof DoubleArrayList)) {
+            throw new UnsupportedOperationException("this chart is read-only, see Chart.appendable()");
+        }
+        if (ys.length != columns.length) {
+            throw new IllegalArgumentException("expected " + columns.length + " Y values, got " + ys.length);
+        }
+        int length = this.x.values.size();
+        if (length > 0 && !(x >= this.x.values.get(length - 1))) {
+            throw new IllegalArgumentException("X values must not decrease: " + x + " < " + this.x.values.get(length - 1));
+        }
+
+        if (length == 1) {
+            double stride = x - this.x.values.get(0);
+            xStride = stride > 0 ? stride : Double.NaN;
+        } else if (length > 1 && x != this.x.values.get(0) + length * xStride) {
+            xStride = Double.NaN; // also fine if it is already NaN
+        }
+
+        this.x.append(x);
+        for (int i = 0; i < ys.length; i++) {
+            columns[i].append(ys[i]);
+        }
+    }
+
+    /**
+     * Takes what was {@link #prepared}: pyramids go to columns which don't have their own ones yet.
+     * Call it on the drawing thread.
+     * @return normalized X waiting for a geometry, or null
+     */
+    ChartGeometry.NormalizedX takePrepared() {
+        Prepared prepared = this.prepared;
+        if (prepared == null) return null;
+        this.prepared = null;
+        MinMaxPyramid[] pyramids = prepared.pyramids;
+        if (pyramids != null) {
+            for (int ci = 0; ci < columns.length; ci++) {
+                if (columns[ci].pyramid == null) columns[ci].pyramid = pyramids[ci];
+            }
+        }
+        return prepared.x;
+    }
+
+    /**
+     * Widens Y bounds to fit values of the given columns within [from; to].
+     * Pyramids answer it without touching every point, so it's cheap enough to be done every frame.
+     * @param flags  flags of each column
+     * @param mask   columns having any of these flags are taken into account
+     * @param bounds min & max to be widened
+     * @return whether any column was taken into account
+     */
+    boolean widenYBounds(int from, int to, int[] flags, int mask, double[] bounds) {
+        Column[] columns = this.columns;
+        double yMin = bounds[0];
+        double yMax = bounds[1];
+        boolean any = false;
+        for (int ci = 0; ci < columns.length; ci++) {
+            if ((flags[ci] & mask) != 0) {
+                Column column = columns[ci];
+                MinMaxPyramid pyramid = column.pyramid();
+                double colMin = column.values.get(pyramid.minIndex(from, to));
+                double colMax = column.values.get(pyramid.maxIndex(from, to));
+                if (colMin < yMin) yMin = colMin;
+                if (colMax > yMax) yMax = colMax;
+                any = true;
+            }
+        }
+        bounds[0] = yMin;
+        bounds[1] = yMax;
+        return any;
+    }
+
+    /**
+     * Pyramids and normalized X built off the drawing thread, immutable until taken by {@link #takePrepared}.
+     */
+    static final class Prepared {
+        final MinMaxPyramid[] pyramids; // of each column, or null
+        final ChartGeometry.NormalizedX x; // or null
+        Prepared(MinMaxPyramid[] pyramids, ChartGeometry.NormalizedX x) {
+            this.pyramids = pyramids;
+            this.x = x;
+        }
+    }
+
+    public static final class Column {
+        public final String name;
+        @ColorInt public final int colour;
+        public final ColumnValues values;
+        /** Bounds of all values. May be changed by {@link Chart#append} and {@link RollingChart#append}. */
+        public double minValue;
+        public double maxValue;
+
+        public Column(String name, int colour, ColumnValues values, double minValue, double maxValue) {
+            this(name, colour, values, minValue, maxValue, null);
+        }
+
+        /**
+         * @param storedPyramid pyramid stored in a {@link ChartFile}, or null to build one when needed
+         */
+        Column(String name, int colour, ColumnValues values, double minValue, double maxValue, IntBuffer storedPyramid) {
+            this.name = name;
+            this.colour = colour;
+            this.values = values;
+            this.minValue = minValue;
+            this.maxValue = maxValue;
+            this.storedPyramid = storedPyramid;
+        }
+
+        private IntBuffer storedPyramid;
+        private MinMaxPyramid pyramid; // touched only on the drawing thread, prepared ones come from Chart.takePrepared()
+        MinMaxPyramid pyramid() {
+            MinMaxPyramid pyramid = this.pyramid;
+            if (pyramid == null) this.pyramid = pyramid = newPyramid();
+            return pyramid;
+        }
+
+        /**
+         * Builds or reads a pyramid without keeping it, so it can be done on any thread while the column is not shown.
+         */
+        MinMaxPyramid newPyramid() {
+            IntBuffer stored = storedPyramid;
+            return stored == null ? new MinMaxPyramid(values) : ChartFile.readPyramid(values, stored);
+        }
+
+        Column growable() {
+            int length = values.size();
+            DoubleArrayList copy = new DoubleArrayList(length + (length >> 1));
+            for (int i = 0; i < length; i++) copy.add(values.get(i));
+            return new Column(name, colour, copy, minValue, maxValue);
+        }
+
+        void append(double value) {
+            ((DoubleArrayList) values).add(value);
+            appended(value);
+        }
+
+        /** Updates bounds & indices after a value was added to the end of {@link #values}. */
+        void appended(double value) {
+            if (value < minValue || minValue != minValue) minValue = value; // bounds of an empty column are NaN
+            if (value > maxValue || maxValue != maxValue) maxValue = value;
+            MinMaxPyramid pyramid = this.pyramid;
+            if (pyramid != null) pyramid.sync();
+        }
+
+        /**
+         * Indexes values from {@param from} on again after they were changed. Bounds are up to the caller.
+         */
+        void changed(int from) {
+            storedPyramid = null;
+            MinMaxPyramid pyramid = this.pyramid;
+            if (pyramid != null) {
+                pyramid.truncate(from);
+                pyramid.sync();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,323 @@
+package net.aquadc.tgchart;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Binary columnar chart storage which is meant to be memory-mapped.
+ * All numbers are little-endian.
+ * <pre>
+ * file:
+ *   int     magic 'TGCH'
+ *   int     version
+ *   int     chart count
+ *   int     padding
+ *   long[]  absolute offsets of charts
+ * chart:
+ *   int     column count, including X which goes first
+ *   int     length, i. e. value count in each column
+ *   double  X stride or NaN
+ *   column[]
+ * column:
+ *   double  min value
+ *   double  max value
+ *   long    absolute offset of values, aligned to 8 bytes; or stride bits for STRIDE encoding
+ *   long    absolute offset of the pyramid, aligned to 8 bytes; 0 if there's no one
+ *   int     colour
+ *   byte    encoding: DOUBLES, INTS, or STRIDE
+ *   short   name length in bytes
+ *   byte[]  UTF-8 name
+ * values:
+ *   DOUBLES: double[length]
+ *   INTS:    int[length], padded to 8 bytes
+ *   STRIDE:  nothing, values are min + i * stride
+ * pyramid, see {@link MinMaxPyramid}:
+ *   int     level count
+ *   int     padding
+ *   level[]
+ * level:
+ *   int[]   index of min value in each bucket
+ *   int[]   index of max value in each bucket
+ * </pre>
+ */
+final class ChartFile {
+
+    private static final int MAGIC = 'T' | 'G' << 8 | 'C' << 16 | 'H' << 24;
+    private static final int VERSION = 3;
+    private static final byte DOUBLES = 0, INTS = 1, STRIDE = 2;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private ChartFile() {}
+
+    /**
+     * Parses JSON charts one by one and writes them into a binary file,
+     * so only a single parsed chart is held in memory at a time.
+     * Writes to a temporary file first, so {@param dst} is either complete or untouched.
+     */
+    static void convert(JsonCharts charts, File dst) throws IOException {
+        File tmp = new File(dst.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            write(charts, out.getChannel());
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(dst)) {
+            tmp.delete();
+            throw new IOException("Can't rename " + tmp + " to " + dst);
+        }
+    }
+
+    private static void write(JsonCharts charts, FileChannel out) throws IOException {
+        int chartCount = charts.size();
+        long[] chartOffsets = new long[chartCount];
+        long offset = 16 + 8 * chartCount; // chart offsets are unknown until charts are written, reserve space for them
+
+        ByteBuffer buf = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(MAGIC).putInt(VERSION).putInt(chartCount).putInt(0);
+        for (int i = 0; i < chartCount; i++) {
+            buf = ensure(out, buf, 8).putLong(0);
+        }
+
+        for (int i = 0; i < chartCount; i++) {
+            Chart chart = charts.parse(i);
+            Chart.Column[] columns = chart.columns;
+            int length = chart.x.values.size();
+            chartOffsets[i] = offset;
+            long headerEnd = offset + headerSize(chart);
+            long dataOffset = align(headerEnd);
+            int padding = (int) (dataOffset - headerEnd);
+
+            byte[] encodings = new byte[columns.length + 1];
+            MinMaxPyramid[] pyramids = new MinMaxPyramid[columns.length];
+            long pyramidOffset = dataOffset;
+            for (int ci = -1; ci < columns.length; ci++) {
+                Chart.Column column = ci == -1 ? chart.x : columns[ci];
+                byte encoding = encodings[ci + 1] = encodingOf(column.values);
+                if (encoding != STRIDE) pyramidOffset += align((encoding == INTS ? 4L : 8L) * length);
+            }
+
+            buf = ensure(out, buf, 16);
+            buf.putInt(columns.length + 1).putInt(length).putDouble(chart.xStride());
+            for (int ci = -1; ci < columns.length; ci++) {
+                Chart.Column column = ci == -1 ? chart.x : columns[ci];
+                byte encoding = encodings[ci + 1];
+                byte[] name = column.name.getBytes(UTF_8);
+                buf = ensure(out, buf, 39 + name.length);
+                buf.putDouble(column.minValue).putDouble(column.maxValue);
+                if (encoding == STRIDE) {
+                    buf.putDouble(((ColumnValues.Stride) column.values).stride);
+                } else {
+                    buf.putLong(dataOffset);
+                    dataOffset += align((encoding == INTS ? 4L : 8L) * length);
+                }
+                if (ci == -1) { // X is never looked up by value
+                    buf.putLong(0);
+                } else {
+                    MinMaxPyramid pyramid = pyramids[ci] = column.pyramid();
+                    buf.putLong(pyramidOffset);
+                    pyramidOffset += align(pyramidSize(pyramid, length));
+                }
+                buf.putInt(column.colour).put(encoding).putShort((short) name.length).put(name);
+            }
+            buf = pad(out, buf, padding);
+
+            for (int ci = -1; ci < columns.length; ci++) {
+                ColumnValues values = (ci == -1 ? chart.x : columns[ci]).values;
+                byte encoding = encodings[ci + 1];
+                if (encoding == INTS) {
+                    for (int vi = 0; vi < length; vi++) {
+                        buf = ensure(out, buf, 4);
+                        buf.putInt((int) values.get(vi));
+                    }
+                    buf = pad(out, buf, (int) (align(4L * length) - 4L * length));
+                } else if (encoding == DOUBLES) {
+                    for (int vi = 0; vi < length; vi++) {
+                        buf = ensure(out, buf, 8);
+                        buf.putDouble(values.get(vi));
+                    }
+                }
+            }
+
+            for (MinMaxPyramid pyramid : pyramids) {
+                int levels = pyramid.levels();
+                buf = ensure(out, buf, 8);
+                buf.putInt(levels).putInt(0);
+                for (int level = 0; level < levels; level++) {
+                    int buckets = bucketCount(level, length);
+                    for (int b = 0; b < buckets; b++) {
+                        buf = ensure(out, buf, 4);
+                        buf.putInt(pyramid.bucketMinIndex(level, b));
+                    }
+                    for (int b = 0; b < buckets; b++) {
+                        buf = ensure(out, buf, 4);
+                        buf.putInt(pyramid.bucketMaxIndex(level, b));
+                    }
+                }
+                int size = pyramidSize(pyramid, length);
+                buf = pad(out, buf, (int) (align(size) - size));
+            }
+            offset = align(pyramidOffset);
+        }
+        flush(out, buf);
+
+        buf = ByteBuffer.allocate(8 * chartCount).order(ByteOrder.LITTLE_ENDIAN);
+        for (long chartOffset : chartOffsets) {
+            buf.putLong(chartOffset);
+        }
+        buf.flip();
+        long position = 16;
+        while (buf.hasRemaining()) position += out.write(buf, position);
+    }
+    private static byte encodingOf(ColumnValues values) {
+        if (values instanceof ColumnValues.Stride) return STRIDE;
+        for (int i = 0, size = values.size(); i < size; i++) {
+            double value = values.get(i);
+            if (value != (int) value || value == 0.0 && 1 / value < 0 /*-0.0*/) return DOUBLES;
+        }
+        return INTS;
+    }
+    private static int headerSize(Chart chart) {
+        int size = 16;
+        size += 39 + chart.x.name.getBytes(UTF_8).length;
+        for (Chart.Column column : chart.columns) {
+            size += 39 + column.name.getBytes(UTF_8).length;
+        }
+        return size;
+    }
+    private static int bucketCount(int level, int length) {
+        int shift = MinMaxPyramid.bucketShift(level);
+        return (length + (1 << shift) - 1) >> shift;
+    }
+    private static int pyramidSize(MinMaxPyramid pyramid, int length) {
+        int size = 8;
+        for (int level = 0, levels = pyramid.levels(); level < levels; level++) {
+            size += 8 * bucketCount(level, length);
+        }
+        return size;
+    }
+    private static long align(long offset) {
+        return (offset + 7) & ~7L;
+    }
+    private static ByteBuffer ensure(FileChannel out, ByteBuffer buf, int bytes) throws IOException {
+        if (buf.remaining() < bytes) {
+            flush(out, buf);
+            if (buf.capacity() < bytes) buf = ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return buf;
+    }
+    private static ByteBuffer pad(FileChannel out, ByteBuffer buf, int bytes) throws IOException {
+        buf = ensure(out, buf, bytes);
+        for (int p = 0; p < bytes; p++) buf.put((byte) 0);
+        return buf;
+    }
+    private static void flush(FileChannel out, ByteBuffer buf) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) out.write(buf);
+        buf.clear();
+    }
+
+    /**
+     * Reads a pyramid written by {@link #convert}: indices are copied into arrays in bulk.
+     */
+    static MinMaxPyramid readPyramid(ColumnValues values, IntBuffer in) {
+        in = in.duplicate();
+        int length = values.size();
+        int levels = in.get();
+        in.get(); // padding
+        int[][] mins = new int[levels][];
+        int[][] maxs = new int[levels][];
+        for (int level = 0; level < levels; level++) {
+            int buckets = bucketCount(level, length);
+            in.get(mins[level] = new int[buckets]);
+            in.get(maxs[level] = new int[buckets]);
+        }
+        return new MinMaxPyramid(values, mins, maxs);
+    }
+
+    /**
+     * Maps the file into memory and reads headers of all charts.
+     * Column values are not copied: they are views of the mapped file, or calculated for STRIDE encoding.
+     * Pyramids are read on first use.
+     */
+    static Chart[] map(File file) throws IOException {
+        MappedByteBuffer map;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()); // stays valid after closing
+        } finally {
+            raf.close();
+        }
+
+        ByteBuffer buf = map.order(ByteOrder.LITTLE_ENDIAN);
+        if (buf.getInt() != MAGIC) throw new IOException(file + " is not a chart file");
+        int version = buf.getInt();
+        if (version != VERSION) throw new IOException(file + " has unsupported version " + version);
+        Chart[] charts = new Chart[buf.getInt()];
+        buf.getInt();
+
+        for (int i = 0; i < charts.length; i++) {
+            buf.position((int) buf.getLong(16 + 8 * i));
+            int columnCount = buf.getInt();
+            int length = buf.getInt();
+            double xStride = buf.getDouble();
+            Chart.Column x = null;
+            Chart.Column[] columns = new Chart.Column[columnCount - 1];
+            for (int ci = -1; ci < columns.length; ci++) {
+                double min = buf.getDouble();
+                double max = buf.getDouble();
+                long dataOffset = buf.getLong();
+                long pyramidOffset = buf.getLong();
+                int colour = buf.getInt();
+                byte encoding = buf.get();
+                byte[] name = new byte[buf.getShort() & 0xFFFF];
+                buf.get(name);
+
+                ColumnValues values;
+                if (encoding == STRIDE) {
+                    values = new ColumnValues.Stride(min, Double.longBitsToDouble(dataOffset), length);
+                } else if (encoding == INTS || encoding == DOUBLES) {
+                    int position = buf.position();
+                    buf.position((int) dataOffset);
+                    // slice() forgets the byte order
+                    ByteBuffer data = buf.slice().order(ByteOrder.LITTLE_ENDIAN);
+                    buf.position(position);
+                    if (encoding == INTS) {
+                        data.limit(4 * length);
+                        values = new ColumnValues.BufferedInts(data.asIntBuffer());
+                    } else {
+                        data.limit(8 * length);
+                        values = new ColumnValues.Buffered(data.asDoubleBuffer());
+                    }
+                } else {
+                    throw new IOException(file + " has unsupported encoding " + encoding);
+                }
+
+                IntBuffer pyramid = null;
+                if (pyramidOffset != 0) {
+                    int position = buf.position();
+                    buf.position((int) pyramidOffset);
+                    pyramid = buf.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+                    buf.position(position);
+                }
+
+                Chart.Column column = new Chart.Column(new String(name, UTF_8), colour, values, min, max, pyramid);
+                if (ci == -1) x = column;
+                else columns[ci] = column;
+            }
+            charts[i] = new Chart(x, columns, xStride);
+        }
+        return charts;
+    }
+
+}
@@ -0,0 +1,204 @@
+package net.aquadc.tgchart;
+
+import androidx.annotation.MainThread;
+
+import java.util.Arrays;
+
+/**
+ * Normalized geometry of a {@link Chart}, shared by all {@code ChartDrawable}s which show it
+ * (and by {@code ChartBubbleView} through them), so it is stored and computed once per chart.
+ * Reference-counted: {@link #acquire} it for every user and {@link #release} when done.
+ * Main thread only, like drawing.
+ */
+@MainThread final class ChartGeometry {
+
+    private final Chart data;
+    private int refCount;
+
+    // Geometry is normalized to [0; 1] regardless of bounds, pixels come only from the per-frame matrix,
+    // so resizing costs nothing.
+    // X values unless evenly spaced, in [0; 1] according to the bounds of X when they were normalized first.
+    // They stay valid when points are appended, only xFactor & xShift change.
+    // Y values are normalized on the fly
+    private float[] normalized;
+    private NormalizedX prepared; // taken from Chart.takePrepared(), becomes normalized on the first normalize()
+    // normalized[0; filledLength) are valid for filledModCount; both lag behind while X are even
+    private int filledLength, filledModCount;
+    private int normalizedLength = -1;
+    private int normalizedModCount;
+    private double xOrigin, xUnit;
+    private float xFactor, xShift; // normalized -> [0; 1]
+    private float xStep; // distance between X values in [0; 1] if they are evenly spaced, NaN otherwise
+
+    private ChartGeometry(Chart data) {
+        this.data = data;
+    }
+
+    static ChartGeometry acquire(Chart chart) {
+        ChartGeometry geometry = chart.geometry;
+        if (geometry == null) chart.geometry = geometry = new ChartGeometry(chart);
+        NormalizedX prepared = chart.takePrepared();
+        if (prepared != null && geometry.normalized == null) geometry.prepared = prepared;
+        geometry.refCount++;
+        return geometry;
+    }
+
+    void release() {
+        if (refCount == 0) throw new IllegalStateException("released too many times");
+        if (--refCount == 0 && data.geometry == this) {
+            data.geometry = null;
+            if (normalized != null && filledModCount == data.modCount) {
+                // give normalized X back, so the next geometry (e. g. after rotation) won't normalize them again
+                data.prepared = new Chart.Prepared(null, new NormalizedX(normalized, filledLength, filledModCount, xOrigin, xUnit));
+            } else if (prepared != null) {
+                data.prepared = new Chart.Prepared(null, prepared); // never drawn
+            }
+        }
+    }
+
+    void normalizeIfNeeded() {
+        Chart data = this.data;
+        if (normalizedLength != data.x.values.size() || normalizedModCount != data.modCount) normalize();
+    }
+    private void normalize() {
+        // let's translate & scale values into [0; 1] —
+        // translate & scale of Canvas can't work with so big values
+
+        Chart data = this.data;
+        Chart.Column xCol = data.x;
+        ColumnValues xValues = xCol.values;
+        int length = xValues.size();
+        boolean evenX = !Double.isNaN(data.xStride()); // then X can be calculated instead of being stored
+
+        double xMin = xCol.minValue;
+        double xDiff = xCol.maxValue - xMin;
+        if (evenX) {
+            xStep = 1f / (length - 1);
+        } else {
+            xStep = Float.NaN;
+            float[] normalized = this.normalized;
+            int from = filledLength;
+            NormalizedX prepared;
+            if (normalized == null && (prepared = this.prepared) != null
+                    && prepared.modCount == data.modCount && prepared.length <= length) {
+                this.prepared = null; // it's ours now, appended values will be written there
+                this.normalized = normalized = prepared.values;
+                xOrigin = prepared.origin;
+                xUnit = prepared.unit;
+                from = prepared.length;
+            } else {
+                if (normalized != null && filledModCount != data.modCount) {
+                    from = Math.min(from, data.changedSince(filledModCount)); // e. g. rolled up, older points are the same
+                }
+                if (normalized == null || from == 0) { // also happens when appending makes X uneven
+                    xOrigin = xMin;
+                    xUnit = xDiff == 0 ? 1 : xDiff;
+                    from = 0;
+                }
+            }
+            if (normalized == null || normalized.length < length) {
+                this.normalized = normalized = normalized == null
+                        ? new float[length]
+                        : Arrays.copyOf(normalized, Math.max(length, normalized.length + (normalized.length >> 1)));
+            }
+            // only appended or changed values need normalization
+            for (int i = from; i < length; i++) {
+                normalized[i] = normalizeX(xValues.get(i), xOrigin, xUnit);
+            }
+            filledLength = length;
+            filledModCount = data.modCount;
+            xFactor = (float) (xUnit / xDiff);
+            xShift = (float) ((xOrigin - xMin) / xDiff);
+        }
+        normalizedLength = length;
+        normalizedModCount = data.modCount;
+    }
+
+    static float normalizeX(double x, double origin, double unit) {
+        return (float) ((x - origin) / unit);
+    }
+    float normalizedX(int index) {
+        float xStep = this.xStep;
+        return xStep == xStep ? index * xStep : normalized[index] * xFactor + xShift;
+    }
+    // normalize & also flip to our coordinates, where y=0 means 'top'
+    static float normalizedY(Chart.Column column, int index) {
+        double yMin = column.minValue;
+        return (float) (1 - ((column.values.get(index) - yMin) / (column.maxValue - yMin)));
+    }
+    int indexOfClosest(float x) {
+        int length = data.x.values.size();
+        float xStep = this.xStep;
+        if (xStep == xStep) {
+            return Math.max(0, Math.min(length - 1, Math.round(x / xStep)));
+        }
+        return indexOfClosest(normalized, 0, length, (x - xShift) / xFactor);
+    }
+    private static int indexOfClosest(float[] haystack, int fromIndex, int toIndex, float needle) {
+        if ((fromIndex = Arrays.binarySearch(haystack, fromIndex, toIndex, needle)) < 0) {
+            fromIndex = -fromIndex - 1; // save up a local variable by reusing fromIndex (just because I can LOL)
+            if (fromIndex == toIndex || // insertion point == length
+                (fromIndex > 0 && needle - haystack[fromIndex - 1] < haystack[fromIndex] - needle))
+                fromIndex--; // ^^ insertion point is always right point, choose left one if it's closer
+        }
+        return fromIndex;
+    }
+
+    /**
+     * @return how many points of [{@param firstIndex}; {@param lastIndex}] fall into a pixel
+     *         when they are stretched to {@param width} pixels, to choose {@link MinMaxPyramid#levelFor} a level of detail.
+     *         Visible points already make the zoomed range, so it's not scaled by the visible fraction again
+     */
+    static float pointsPerPx(int firstIndex, int lastIndex, int width) {
+        return (lastIndex - firstIndex) / (float) width;
+    }
+
+    /**
+     * Rounds a step between guidelines to a human-friendly one, like .1, .2, .5, 1, 2, 5, 10, ...
+     * @param step approximate step, positive
+     */
+    static double niceStep(double step) {
+        int exp = 0;
+        while (step >= 10) {
+            step /= 10;
+            exp++;
+        }
+        while (step < 1) {
+            step *= 10;
+            exp--;
+        }
+        // assert step ∈ [1; 10)
+        // so let's choose between 1, 2, and 5
+        double one = Math.abs(step - 1);
+        double two = Math.abs(step - 2);
+        double five = Math.abs(step - 5);
+        double roundStep;
+        if (one <= two) {
+            roundStep = 1;
+        } else if (two <= five) {
+            roundStep = 2;
+        } else {
+            roundStep = 5;
+        }
+        return roundStep * Math.pow(10, exp);
+    }
+
+    /**
+     * Uneven X values normalized in advance, e. g. by {@link ChartPreprocessor}.
+     * Immutable until a geometry takes it from {@link Chart#prepared}, then it's owned by that geometry.
+     */
+    static final class NormalizedX {
+        final float[] values; // may be longer than length
+        final int length;
+        final int modCount;
+        final double origin, unit;
+        NormalizedX(float[] values, int length, int modCount, double origin, double unit) {
+            this.values = values;
+            this.length = length;
+            this.modCount = modCount;
+            this.origin = origin;
+            this.unit = unit;
+        }
+    }
+
+}
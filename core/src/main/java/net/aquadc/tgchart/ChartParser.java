@@ -0,0 +1,475 @@
+package net.aquadc.tgchart;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Streaming chart parser which reads bytes, not chars,
+ * and puts numbers right into column arrays, without intermediate Strings.
+ * Not a general-purpose JSON parser: unknown values are skipped, but
+ * numbers are expected only inside 'columns'.
+ */
+final class ChartParser {
+
+    private final InputStream in;
+    private final byte[] buf;
+    private int pos;
+    private int limit;
+    private long consumed; // bytes before buf[0], for error messages
+
+    private char[] chars = new char[32];
+
+    ChartParser(InputStream in) {
+        this.in = in;
+        this.buf = new byte[8192];
+    }
+
+    /**
+     * Creates a parser which reads bytes in [{@param from}; {@param to}) right from the given array.
+     */
+    ChartParser(byte[] bytes, int from, int to) {
+        this.in = null;
+        this.buf = bytes;
+        this.pos = from;
+        this.limit = to;
+    }
+
+    ArrayList<Chart> readCharts() throws IOException {
+        ArrayList<Chart> charts = new ArrayList<>();
+        expect('[');
+        if (peek() != ']') {
+            do {
+                charts.add(readChart());
+            } while (nextSeparator(']'));
+        } else {
+            pos++;
+        }
+        return charts;
+    }
+
+    Chart readChart() throws IOException {
+        /* format:
+        {
+            "columns": [
+                [ "id", ints... ], ...
+            ],
+            "types": {
+                "id": "line" | "x"
+            },
+            "names": {
+                "id": "name", ...
+            },
+            "colors": {
+                "id": "#rrggbb", ...
+            }
+        }
+         */
+
+        colCount = 0;
+        colIds = null;
+        String xColId = null;
+        String[] names = null;
+        String[] colours = null;
+
+        expect('{');
+        if (peek() != '}') {
+            do {
+                String key = readString();
+                expect(':');
+                switch (key) {
+                    case "columns":
+                        readColumns();
+                        break;
+
+                    case "types":
+                        xColId = readXColId();
+                        break;
+
+                    case "names":
+                        names = readMap();
+                        break;
+
+                    case "colors":
+                        colours = readMap();
+                        break;
+
+                    default:
+                        skipValue();
+                        break;
+                }
+            } while (nextSeparator('}'));
+        } else {
+            pos++;
+        }
+
+        if (colIds == null) throw new NoSuchElementException("'columns' object was not provided.");
+        if (xColId == null) throw new NoSuchElementException("'types' object was not provided.");
+        if (names == null) throw new NoSuchElementException("'names' object was not provided.");
+        if (colours == null) throw new NoSuchElementException("'colours' object was not provided.");
+
+        int length = colValues[0].length;
+        Chart.Column xCol = null;
+        Chart.Column[] cols = new Chart.Column[colCount - 1];
+        int colIdx = 0;
+        for (int i = 0; i < colCount; i++) {
+            String id = colIds[i];
+            double[] values = colValues[i];
+            if (values.length != length) {
+                throw new IllegalArgumentException("column " + id + " has " + values.length + " values while " + colIds[0] + " has " + length);
+            }
+            if (xColId.equals(id)) {
+                xCol = new Chart.Column("x", 0 /*transparent*/, ColumnValues.of(values), colMins[i], colMaxs[i]);
+            } else {
+                if (colIdx == cols.length) throw new NoSuchElementException("'x' column " + xColId + " is not provided.");
+                String name = get(names, id);
+                if (name == null) throw new NoSuchElementException("no name provided for the column " + id);
+                String colour = get(colours, id);
+                if (colour == null) throw new NoSuchElementException("no colour provided for the column " + id);
+                cols[colIdx++] = new Chart.Column(name, parseColour(colour), ColumnValues.of(values), colMins[i], colMaxs[i]);
+            }
+        }
+
+        colIds = null;
+        colValues = null;
+        return new Chart(xCol, cols);
+    }
+
+    // columns staging: parallel arrays instead of a map
+    private int colCount;
+    private String[] colIds;
+    private double[][] colValues;
+    private double[] colMins;
+    private double[] colMaxs;
+
+    private void readColumns() throws IOException {
+        colIds = new String[4];
+        colValues = new double[4][];
+        colMins = new double[4];
+        colMaxs = new double[4];
+
+        expect('[');
+        if (peek() == ']') {
+            pos++;
+            throw new NoSuchElementException("'columns' array is empty.");
+        }
+        int capacity = 256; // the first column's size is unknown, the rest are expected to be of the same size
+        do {
+            expect('[');
+            String id = readString();
+            double[] values = new double[capacity];
+            int size = 0;
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            while (nextSeparator(']')) {
+                double v = readNumber();
+                if (size == values.length) values = Arrays.copyOf(values, size + (size >> 1) + 1);
+                values[size++] = v;
+                if (v < min) min = v;
+                if (v > max) max = v;
+            }
+            if (size != values.length) values = Arrays.copyOf(values, size); // happens once for the first column
+            capacity = Math.max(size, 1);
+
+            if (colCount == colIds.length) {
+                int newSize = 2 * colCount;
+                colIds = Arrays.copyOf(colIds, newSize);
+                colValues = Arrays.copyOf(colValues, newSize);
+                colMins = Arrays.copyOf(colMins, newSize);
+                colMaxs = Arrays.copyOf(colMaxs, newSize);
+            }
+            colIds[colCount] = id;
+            colValues[colCount] = values;
+            colMins[colCount] = min;
+            colMaxs[colCount] = max;
+            colCount++;
+        } while (nextSeparator(']'));
+    }
+
+    private String readXColId() throws IOException {
+        String xColId = null;
+
+        expect('{');
+        if (peek() != '}') {
+            do {
+                String name = readString();
+                expect(':');
+                String type = readString();
+                switch (type) {
+                    case "x":
+                        xColId = name;
+                        break;
+
+                    case "line":
+                        // no-op
+                        break;
+
+                    default:
+                        throw new IllegalArgumentException("unsupported column type: " + type);
+                }
+            } while (nextSeparator('}'));
+        } else {
+            pos++;
+        }
+
+        if (xColId == null) {
+            throw new NoSuchElementException("'x' column is not provided.");
+        }
+
+        return xColId;
+    }
+
+    /**
+     * @return keys and values, interleaved
+     */
+    private String[] readMap() throws IOException {
+        String[] map = new String[8];
+        int size = 0;
+        expect('{');
+        if (peek() != '}') {
+            do {
+                if (size == map.length) map = Arrays.copyOf(map, 2 * size);
+                map[size++] = readString();
+                expect(':');
+                map[size++] = readString();
+            } while (nextSeparator('}'));
+        } else {
+            pos++;
+        }
+        return map.length == size ? map : Arrays.copyOf(map, size);
+    }
+    private static String get(String[] map, String key) {
+        for (int i = 0; i < map.length; i += 2) {
+            if (key.equals(map[i])) return map[i + 1];
+        }
+        return null;
+    }
+
+    static int parseColour(String colour) {
+        int length = colour.length();
+        if ((length == 7 || length == 9) && colour.charAt(0) == '#') {
+            long argb = 0;
+            for (int i = 1; i < length; i++) {
+                int digit = Character.digit(colour.charAt(i), 16);
+                if (digit < 0) break;
+                argb = argb << 4 | digit;
+                if (i == length - 1) {
+                    return length == 7 ? 0xFF_000000 | (int) argb : (int) argb;
+                }
+            }
+        }
+        throw new IllegalArgumentException("Unknown color: " + colour);
+    }
+
+    // lexer
+
+    private boolean fill() throws IOException {
+        if (in == null) return false;
+        consumed += limit;
+        pos = 0;
+        limit = 0;
+        int read = in.read(buf, 0, buf.length);
+        if (read <= 0) return false;
+        limit = read;
+        return true;
+    }
+
+    /**
+     * @return next non-whitespace byte without consuming it
+     */
+    private int peek() throws IOException {
+        while (true) {
+            if (pos == limit && !fill()) throw syntaxError("Unexpected end of input");
+            byte b = buf[pos];
+            if (b == ' ' || b == '\n' || b == '\r' || b == '\t') pos++;
+            else return b;
+        }
+    }
+
+    private void expect(char c) throws IOException {
+        if (peek() != c) throw syntaxError("Expected '" + c + "'");
+        pos++;
+    }
+
+    /**
+     * Consumes either ',' or {@param end}.
+     * @return whether there are more elements
+     */
+    private boolean nextSeparator(char end) throws IOException {
+        int b = peek();
+        if (b == ',') {
+            pos++;
+            return true;
+        } else if (b == end) {
+            pos++;
+            return false;
+        }
+        throw syntaxError("Expected ',' or '" + end + "'");
+    }
+
+    private String readString() throws IOException {
+        expect('"');
+        char[] chars = this.chars;
+        int size = 0;
+        while (true) {
+            if (pos == limit && !fill()) throw syntaxError("Unterminated string");
+            int b = buf[pos++] & 0xFF;
+            if (b == '"') break;
+            if (size + 2 > chars.length) this.chars = chars = Arrays.copyOf(chars, 2 * chars.length);
+            if (b == '\\') {
+                chars[size++] = readEscape();
+            } else if (b < 0x80) {
+                chars[size++] = (char) b;
+            } else { // multi-byte UTF-8 sequence
+                int extra = b >= 0xF0 ? 3 : b >= 0xE0 ? 2 : 1;
+                int cp = b & (0x3F >> extra);
+                for (int i = 0; i < extra; i++) {
+                    if (pos == limit && !fill()) throw syntaxError("Unterminated string");
+                    cp = cp << 6 | (buf[pos++] & 0x3F);
+                }
+                if (cp >= 0x10000) {
+                    chars[size++] = Character.highSurrogate(cp);
+                    chars[size++] = Character.lowSurrogate(cp);
+                } else {
+                    chars[size++] = (char) cp;
+                }
+            }
+        }
+        return new String(chars, 0, size);
+    }
+    private char readEscape() throws IOException {
+        if (pos == limit && !fill()) throw syntaxError("Unterminated escape sequence");
+        byte b = buf[pos++];
+        switch (b) {
+            case 'b': return '\b';
+            case 'f': return '\f';
+            case 'n': return '\n';
+            case 'r': return '\r';
+            case 't': return '\t';
+            case 'u':
+                int c = 0;
+                for (int i = 0; i < 4; i++) {
+                    if (pos == limit && !fill()) throw syntaxError("Unterminated escape sequence");
+                    int digit = Character.digit(buf[pos++], 16);
+                    if (digit < 0) throw syntaxError("Invalid escape sequence");
+                    c = c << 4 | digit;
+                }
+                return (char) c;
+            default: return (char) b; // '"', '\\', '/'
+        }
+    }
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private double readNumber() throws IOException {
+        peek();
+        numberLength = 0;
+        boolean negative = false;
+        long mantissa = 0;
+        int exponent = 0;
+        boolean exact = true;
+
+        int b = nextNumberByte();
+        if (b == '-') {
+            negative = true;
+            b = nextNumberByte();
+        }
+        if (b < '0' || b > '9') throw syntaxError("Expected a number");
+        while (b >= '0' && b <= '9') {
+            if (mantissa < 100_000_000_000_000_000L) mantissa = 10 * mantissa + (b - '0');
+            else exact = false;
+            b = nextNumberByte();
+        }
+        if (b == '.') {
+            b = nextNumberByte();
+            while (b >= '0' && b <= '9') {
+                if (mantissa < 100_000_000_000_000_000L) {
+                    mantissa = 10 * mantissa + (b - '0');
+                    exponent--;
+                } else {
+                    exact = false;
+                }
+                b = nextNumberByte();
+            }
+        }
+        if (b == 'e' || b == 'E') {
+            b = nextNumberByte();
+            boolean negativeExp = b == '-';
+            if (b == '-' || b == '+') b = nextNumberByte();
+            int exp = 0;
+            while (b >= '0' && b <= '9') {
+                if (exp < 10_000) exp = 10 * exp + (b - '0');
+                b = nextNumberByte();
+            }
+            exponent += negativeExp ? -exp : exp;
+        }
+        if (b != -1) { // give back the byte which is not a part of the number
+            pos--;
+            numberLength--;
+        }
+
+        // both mantissa and power of ten are exact: a single multiplication or division gives a correctly rounded result
+        if (exact && mantissa < (1L << 53) && exponent >= -22 && exponent <= 22) {
+            double d = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+            return negative ? -d : d;
+        }
+        // rare: too many digits or a huge exponent
+        return Double.parseDouble(new String(number, 0, numberLength, "ISO-8859-1"));
+    }
+    private byte[] number = new byte[24];
+    private int numberLength;
+    private int nextNumberByte() throws IOException {
+        if (pos == limit && !fill()) return -1;
+        byte b = buf[pos++];
+        if (numberLength == number.length) number = Arrays.copyOf(number, 2 * numberLength);
+        number[numberLength++] = b;
+        return b;
+    }
+
+    private void skipValue() throws IOException {
+        int b = peek();
+        switch (b) {
+            case '"':
+                readString();
+                break;
+            case '{':
+                pos++;
+                if (peek() != '}') {
+                    do {
+                        readString();
+                        expect(':');
+                        skipValue();
+                    } while (nextSeparator('}'));
+                } else {
+                    pos++;
+                }
+                break;
+            case '[':
+                pos++;
+                if (peek() != ']') {
+                    do {
+                        skipValue();
+                    } while (nextSeparator(']'));
+                } else {
+                    pos++;
+                }
+                break;
+            default: // number, true, false, null
+                while (true) {
+                    if (pos == limit && !fill()) return;
+                    b = buf[pos];
+                    if (b == ',' || b == '}' || b == ']' || b == ' ' || b == '\n' || b == '\r' || b == '\t') return;
+                    pos++;
+                }
+        }
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException(message + " at byte " + (consumed + pos));
+    }
+
+}
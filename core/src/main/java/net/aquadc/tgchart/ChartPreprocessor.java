@@ -0,0 +1,110 @@
+package net.aquadc.tgchart;
+
+import androidx.annotation.WorkerThread;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Prepares derived data of a freshly loaded chart on a bounded pool of background threads,
+ * so the first frame does no O(n) work: pyramids of all columns are built (or read) in parallel,
+ * and uneven X values are normalized in parallel chunks. The chart itself is not touched until
+ * all of them are published with a single write of {@link Chart#prepared}.
+ * ForkJoinPool is API 21+, so it's a plain fixed pool with tasks forked by hand and joined via futures.
+ */
+final class ChartPreprocessor {
+
+    private static final int THREADS = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), 4));
+    private static final int MIN_CHUNK = 64 * 1024; // smaller chunks are not worth a task
+
+    private ChartPreprocessor() {}
+
+    private static ThreadPoolExecutor pool;
+    private static synchronized ThreadPoolExecutor pool() {
+        if (pool == null) {
+            pool = new ThreadPoolExecutor(THREADS, THREADS, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        private final AtomicInteger number = new AtomicInteger();
+                        @Override public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "ChartPreprocessor-" + number.incrementAndGet());
+                            thread.setDaemon(true);
+                            thread.setPriority(Thread.MIN_PRIORITY);
+                            return thread;
+                        }
+                    });
+            pool.allowCoreThreadTimeOut(true); // nothing to do between chart loads
+        }
+        return pool;
+    }
+
+    /**
+     * Runs other background chart work, e. g. {@code OverviewDrawable} rendering, on the same pool.
+     */
+    static void execute(Runnable task) {
+        pool().execute(task);
+    }
+
+    /**
+     * Prepares the chart and publishes results, blocking until done.
+     * Call it before showing the chart, on a background thread which is not a pool one.
+     */
+    @WorkerThread static void prepare(final Chart chart) {
+        ThreadPoolExecutor pool = pool();
+        ArrayList<Future<?>> tasks = new ArrayList<>();
+        // built into new objects and published at once, so the drawing thread never sees them half-built
+        final Chart.Column[] columns = chart.columns;
+        final MinMaxPyramid[] pyramids = new MinMaxPyramid[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            final int ci = i;
+            tasks.add(pool.submit(new Runnable() {
+                @Override public void run() {
+                    pyramids[ci] = columns[ci].newPyramid();
+                }
+            }));
+        }
+
+        ChartGeometry.NormalizedX x = null;
+        if (Double.isNaN(chart.xStride())) { // even X are calculated, nothing to prepare
+            final ColumnValues values = chart.x.values;
+            final int length = values.size();
+            final double origin = chart.x.minValue;
+            final double diff = chart.x.maxValue - origin;
+            final double unit = diff == 0 ? 1 : diff;
+            final float[] normalized = new float[length];
+            int chunk = Math.max(MIN_CHUNK, (length + THREADS - 1) / THREADS);
+            for (int from = 0; from < length; from += chunk) {
+                final int start = from, end = Math.min(from + chunk, length);
+                tasks.add(pool.submit(new Runnable() {
+                    @Override public void run() {
+                        for (int i = start; i < end; i++) {
+                            normalized[i] = ChartGeometry.normalizeX(values.get(i), origin, unit);
+                        }
+                    }
+                }));
+            }
+            x = new ChartGeometry.NormalizedX(normalized, length, chart.modCount, origin, unit);
+        }
+
+        try {
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            for (Future<?> task : tasks) {
+                task.cancel(false);
+            }
+            Thread.currentThread().interrupt();
+            return; // the chart still works, just prepares lazily
+        }
+        chart.prepared = new Chart.Prepared(pyramids, x); // volatile write, publishes everything written by tasks
+    }
+
+}
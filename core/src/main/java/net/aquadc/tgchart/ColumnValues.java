@@ -0,0 +1,214 @@
+package net.aquadc.tgchart;
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Read-only random access to values of a column, independent of where they are stored and how they are encoded.
+ */
+public abstract class ColumnValues {
+
+    ColumnValues() {
+    }
+
+    public abstract int size();
+
+    public abstract double get(int index);
+
+    /**
+     * Chooses the most compact representation for the given values:
+     * evenly spaced values are calculated, integers are stored as ints or packed relative to their neighbours.
+     */
+    static ColumnValues of(double[] values) {
+        int length = values.length;
+        double stride = Chart.strideOf(new Doubles(values));
+        if (!Double.isNaN(stride)) {
+            return new Stride(values[0], stride, length);
+        }
+
+        boolean fitsInt = true;
+        for (double value : values) {
+            if (value != (long) value || value == 0.0 && 1 / value < 0 /*-0.0*/) {
+                return new Doubles(values);
+            }
+            fitsInt &= value == (int) value;
+        }
+
+        long packedBytes = Packed.sizeInBytes(values);
+        if (fitsInt && 4L * length <= packedBytes) {
+            int[] ints = new int[length];
+            for (int i = 0; i < length; i++) ints[i] = (int) values[i];
+            return new Ints(ints);
+        } else if (packedBytes < 8L * length) {
+            return new Packed(values);
+        } else {
+            return new Doubles(values);
+        }
+    }
+
+    /** Values on Java heap. */
+    static final class Doubles extends ColumnValues {
+        private final double[] values;
+        Doubles(double[] values) {
+            this.values = values;
+        }
+        @Override public int size() {
+            return values.length;
+        }
+        @Override public double get(int index) {
+            return values[index];
+        }
+    }
+
+    /** Integer values on Java heap. */
+    static final class Ints extends ColumnValues {
+        private final int[] values;
+        Ints(int[] values) {
+            this.values = values;
+        }
+        @Override public int size() {
+            return values.length;
+        }
+        @Override public double get(int index) {
+            return values[index];
+        }
+    }
+
+    /** Evenly spaced values, nothing is stored. */
+    static final class Stride extends ColumnValues {
+        final double first;
+        final double stride;
+        private final int size;
+        Stride(double first, double stride, int size) {
+            this.first = first;
+            this.stride = stride;
+            this.size = size;
+        }
+        @Override public int size() {
+            return size;
+        }
+        @Override public double get(int index) {
+            if (index < 0 || index >= size) throw new IndexOutOfBoundsException("index " + index + " is not in [0; " + size + ")");
+            return first + index * stride;
+        }
+    }
+
+    /**
+     * Frame-of-reference packed integers: values are split into blocks of {@code BLOCK} items,
+     * each block stores its minimum, and offsets from it take as many bits as the widest one needs.
+     * Good for near-monotone series where neighbours are close to each other.
+     */
+    static final class Packed extends ColumnValues {
+        private static final int BLOCK_SHIFT = 6;
+        private static final int BLOCK = 1 << BLOCK_SHIFT;
+
+        private final int size;
+        private final long[] bases; // [block]
+        private final byte[] widths; // [block], in bits
+        private final int[] offsets; // [block], in bits from the beginning of 'bits'
+        private final long[] bits;
+
+        Packed(double[] values) {
+            int size = values.length;
+            int blocks = (size + BLOCK - 1) >> BLOCK_SHIFT;
+            long[] bases = new long[blocks];
+            byte[] widths = new byte[blocks];
+            int[] offsets = new int[blocks];
+            long totalBits = 0;
+            for (int b = 0; b < blocks; b++) {
+                int from = b << BLOCK_SHIFT, to = Math.min(from + BLOCK, size);
+                long base = blockMin(values, from, to);
+                bases[b] = base;
+                widths[b] = (byte) blockWidth(values, from, to, base);
+                offsets[b] = (int) totalBits;
+                totalBits += (to - from) * widths[b];
+            }
+            if (totalBits > Integer.MAX_VALUE) throw new IllegalArgumentException("too many values to pack");
+
+            long[] bits = new long[(int) ((totalBits + 63) >> 6) + 1]; // one more word to read two words without checks
+            for (int i = 0; i < size; i++) {
+                int b = i >> BLOCK_SHIFT;
+                int width = widths[b];
+                if (width != 0) {
+                    long offset = (long) values[i] - bases[b];
+                    int bit = offsets[b] + (i & (BLOCK - 1)) * width;
+                    int word = bit >>> 6, shift = bit & 63;
+                    bits[word] |= offset << shift;
+                    if (shift + width > 64) bits[word + 1] |= offset >>> (64 - shift);
+                }
+            }
+
+            this.size = size;
+            this.bases = bases;
+            this.widths = widths;
+            this.offsets = offsets;
+            this.bits = bits;
+        }
+
+        static long sizeInBytes(double[] values) {
+            int size = values.length;
+            int blocks = (size + BLOCK - 1) >> BLOCK_SHIFT;
+            long totalBits = 0;
+            for (int b = 0; b < blocks; b++) {
+                int from = b << BLOCK_SHIFT, to = Math.min(from + BLOCK, size);
+                totalBits += (to - from) * blockWidth(values, from, to, blockMin(values, from, to));
+            }
+            return blocks * (8L + 1 + 4) + ((totalBits + 63) >> 6) * 8 + 8;
+        }
+        private static long blockMin(double[] values, int from, int to) {
+            long min = Long.MAX_VALUE;
+            for (int i = from; i < to; i++) min = Math.min(min, (long) values[i]);
+            return min;
+        }
+        private static int blockWidth(double[] values, int from, int to, long base) {
+            long or = 0;
+            for (int i = from; i < to; i++) or |= (long) values[i] - base;
+            return 64 - Long.numberOfLeadingZeros(or); // may be 64 if the block spans more than Long.MAX_VALUE, that's fine
+        }
+
+        @Override public int size() {
+            return size;
+        }
+        @Override public double get(int index) {
+            if (index < 0 || index >= size) throw new IndexOutOfBoundsException("index " + index + " is not in [0; " + size + ")");
+            int b = index >> BLOCK_SHIFT;
+            int width = widths[b];
+            if (width == 0) return bases[b];
+            int bit = offsets[b] + (index & (BLOCK - 1)) * width;
+            int word = bit >>> 6, shift = bit & 63;
+            long offset = bits[word] >>> shift;
+            if (shift + width > 64) offset |= bits[word + 1] << (64 - shift);
+            if (width < 64) offset &= (1L << width) - 1;
+            return bases[b] + offset;
+        }
+    }
+
+    /** Values in a buffer, e. g. a view of a memory-mapped file. */
+    static final class Buffered extends ColumnValues {
+        private final DoubleBuffer values;
+        Buffered(DoubleBuffer values) {
+            this.values = values;
+        }
+        @Override public int size() {
+            return values.limit();
+        }
+        @Override public double get(int index) {
+            return values.get(index);
+        }
+    }
+
+    /** Integer values in a buffer, e. g. a view of a memory-mapped file. */
+    static final class BufferedInts extends ColumnValues {
+        private final IntBuffer values;
+        BufferedInts(IntBuffer values) {
+            this.values = values;
+        }
+        @Override public int size() {
+            return values.limit();
+        }
+        @Override public double get(int index) {
+            return values.get(index);
+        }
+    }
+
+}
@@ -0,0 +1,33 @@
+package net.aquadc.tgchart;
+
+/**
+ * Formats counts shortly, with SI prefixes and a single digit after the point, e. g. 1.2k or 35M.
+ */
+public final class CountFormatter implements ValueFormatter {
+    private static final double[] MULTIPLIERS = { 1_000_000_000, 1_000_000, 1_000, 1, .001, .000_001 /* intentionally omitted .000_000_001 */ };
+    private static final char[] UNITS = { 'G', 'M', 'k', '\0', 'm', 'μ', 'n' };
+
+    @Override public void formatValueInto(StringBuilder sb, double value) {
+        int unitIdx = 0;
+        char unit;
+        if (value == 0.0 || Double.isInfinite(value) || Double.isNaN(value)) {
+            unit = '\0';
+        } else {
+            for (; unitIdx < MULTIPLIERS.length; unitIdx++) {
+                double mul = MULTIPLIERS[unitIdx];
+                if (value >= mul) {
+                    value /= mul;
+                    break;
+                }
+            }
+            unit = UNITS[unitIdx];
+        }
+        if (unit != '\0') { // round value to a single digit after comma
+            value = Math.round(10 * value) / 10.0d;
+        }
+        sb.append(value);
+        int i = sb.lastIndexOf(".0");
+        if (i > 0) sb.setLength(i);
+        if (unit != '\0') sb.append(unit);
+    }
+}
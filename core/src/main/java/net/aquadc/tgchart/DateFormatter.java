@@ -0,0 +1,154 @@
+package net.aquadc.tgchart;
+
+
+import java.text.DateFormatSymbols;
+import java.text.DecimalFormatSymbols;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Formats epoch millis like {@link java.text.SimpleDateFormat} does, but straight into the given StringBuilder:
+ * names are looked up in tables taken from the locale once, and date fields are calculated arithmetically,
+ * so nothing is allocated per call.
+ * Supports a subset of patterns which is enough for labels: {@code d}, {@code M}, {@code E}, {@code y}, and quoted text,
+ * e. g. "MMM d" or "E, MMM d".
+ * Uses the proleptic Gregorian calendar, so dates before 1582 differ from SimpleDateFormat ones.
+ */
+public final class DateFormatter implements ValueFormatter {
+
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000;
+
+    // pattern is compiled into fields and their widths, literals are stored separately
+    private static final char LITERAL = 0;
+    private final char[] fields;
+    private final int[] widths;
+    private final String[] literals;
+
+    private final String[] shortMonths, months, shortWeekdays, weekdays;
+    private final char zeroDigit;
+    private final TimeZone timeZone;
+
+    public DateFormatter(String pattern, Locale locale) {
+        int length = pattern.length();
+        char[] fields = new char[length];
+        int[] widths = new int[length];
+        String[] literals = new String[length];
+        int count = 0;
+        for (int i = 0; i < length; ) {
+            char c = pattern.charAt(i);
+            if (c == 'd' || c == 'M' || c == 'E' || c == 'y') {
+                int end = i;
+                while (end < length && pattern.charAt(end) == c) end++;
+                fields[count] = c;
+                widths[count++] = end - i;
+                i = end;
+            } else if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+                throw new IllegalArgumentException("unsupported pattern letter '" + c + "' in \"" + pattern + '"');
+            } else {
+                StringBuilder literal = new StringBuilder();
+                while (i < length) {
+                    c = pattern.charAt(i);
+                    if (c == '\'') {
+                        if (i + 1 < length && pattern.charAt(i + 1) == '\'') { // '' is a quote itself
+                            literal.append('\'');
+                            i += 2;
+                            continue;
+                        }
+                        for (i++; ; ) { // quoted text, where '' is a quote too
+                            if (i >= length) throw new IllegalArgumentException("unterminated quote in \"" + pattern + '"');
+                            c = pattern.charAt(i++);
+                            if (c != '\'') {
+                                literal.append(c);
+                            } else if (i < length && pattern.charAt(i) == '\'') {
+                                literal.append('\'');
+                                i++;
+                            } else {
+                                break;
+                            }
+                        }
+                    } else if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+                        break;
+                    } else {
+                        literal.append(c);
+                        i++;
+                    }
+                }
+                fields[count] = LITERAL;
+                literals[count++] = literal.toString();
+            }
+        }
+        this.fields = Arrays.copyOf(fields, count);
+        this.widths = Arrays.copyOf(widths, count);
+        this.literals = Arrays.copyOf(literals, count);
+
+        DateFormatSymbols symbols = DateFormatSymbols.getInstance(locale);
+        this.shortMonths = symbols.getShortMonths();
+        this.months = symbols.getMonths();
+        this.shortWeekdays = symbols.getShortWeekdays();
+        this.weekdays = symbols.getWeekdays();
+        this.zeroDigit = DecimalFormatSymbols.getInstance(locale).getZeroDigit();
+        this.timeZone = TimeZone.getDefault(); // like SimpleDateFormat does
+    }
+
+    @Override
+    public void formatValueInto(StringBuilder sb, double value) {
+        long millis = (long) value;
+        millis += timeZone.getOffset(millis);
+        long days = floorDiv(millis, DAY_MILLIS);
+
+        // civil from days, see http://howardhinnant.github.io/date_algorithms.html
+        long z = days + 719468;
+        long era = floorDiv(z, 146097);
+        int doe = (int) (z - era * 146097); // [0, 146096]
+        int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365; // [0, 399]
+        int doy = doe - (365 * yoe + yoe / 4 - yoe / 100); // [0, 365]
+        int mp = (5 * doy + 2) / 153; // [0, 11], March-based
+        int day = doy - (153 * mp + 2) / 5 + 1; // [1, 31]
+        int month = mp < 10 ? mp + 3 : mp - 9; // [1, 12]
+        long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+        int weekday = (int) (days + 4 - floorDiv(days + 4, 7) * 7) + 1; // 1970-01-01 is Thursday, Calendar.SUNDAY is 1
+
+        char[] fields = this.fields;
+        for (int i = 0; i < fields.length; i++) {
+            int width = widths[i];
+            switch (fields[i]) {
+                case LITERAL:
+                    sb.append(literals[i]);
+                    break;
+                case 'd':
+                    appendNumber(sb, day, width);
+                    break;
+                case 'M':
+                    if (width >= 4) sb.append(months[month - 1]);
+                    else if (width == 3) sb.append(shortMonths[month - 1]);
+                    else appendNumber(sb, month, width);
+                    break;
+                case 'E':
+                    sb.append(width >= 4 ? weekdays[weekday] : shortWeekdays[weekday]);
+                    break;
+                case 'y':
+                    long y = year > 0 ? year : 1 - year; // there's no year 0, and era is not printed
+                    appendNumber(sb, width == 2 ? y % 100 : y, width);
+                    break;
+            }
+        }
+    }
+
+    // Math.floorDiv is API 24
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        return (x % y != 0 && (x ^ y) < 0) ? q - 1 : q;
+    }
+
+    private void appendNumber(StringBuilder sb, long value, int minDigits) {
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) digits++;
+        for (int i = digits; i < minDigits; i++) sb.append(zeroDigit);
+        long divisor = 1;
+        for (int i = 1; i < digits; i++) divisor *= 10;
+        for (; divisor > 0; divisor /= 10) {
+            sb.append((char) (zeroDigit + value / divisor % 10));
+        }
+    }
+}
@@ -3,14 +3,18 @@ package net.aquadc.tgchart;
 import java.util.Arrays;
 
 
-public final class DoubleArrayList {
+public final class DoubleArrayList extends ColumnValues {
 
     private double[] elementData;
 
     private int size;
 
     public DoubleArrayList() {
-        elementData = new double[10];
+        this(10);
+    }
+
+    public DoubleArrayList(int initialCapacity) {
+        elementData = new double[Math.max(initialCapacity, 1)];
         size = 0;
     }
 
@@ -19,6 +23,15 @@ public final class DoubleArrayList {
         elementData[size++] = e;
     }
 
+    @Override public int size() {
+        return size;
+    }
+
+    @Override public double get(int index) {
+        if (index >= size) throw new IndexOutOfBoundsException("index " + index + " is not in [0; " + size + ")");
+        return elementData[index];
+    }
+
     public double[] toArray() {
         return elementData.length == size
                 ? elementData
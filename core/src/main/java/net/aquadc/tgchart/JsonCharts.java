@@ -0,0 +1,107 @@
+package net.aquadc.tgchart;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A JSON array of charts which are parsed on demand.
+ * Construction does a single structural pass (no number parsing, no allocations per value)
+ * to find where each chart object starts and ends.
+ */
+final class JsonCharts {
+
+    private static final int CACHE_SIZE = 4; // bounded: a parsed chart may take megabytes
+
+    private final byte[] json;
+    private final int[] starts;
+    private final int[] ends;
+    private final LinkedHashMap<Integer, Chart> cache =
+            new LinkedHashMap<Integer, Chart>(CACHE_SIZE, 1f, /*accessOrder=*/true) {
+                @Override protected boolean removeEldestEntry(Map.Entry<Integer, Chart> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            };
+
+    JsonCharts(byte[] json, int length) throws IOException {
+        this.json = json;
+
+        int[] starts = new int[8];
+        int[] ends = new int[8];
+        int count = 0;
+        int depth = 0;
+        boolean inString = false;
+        for (int i = 0; i < length; i++) {
+            byte b = json[i];
+            if (inString) {
+                if (b == '\\') i++;
+                else if (b == '"') inString = false;
+            } else if (b == '"') {
+                inString = true;
+            } else if (b == '{' || b == '[') {
+                if (depth == 1 && b == '{') {
+                    if (count == starts.length) {
+                        starts = Arrays.copyOf(starts, 2 * count);
+                        ends = Arrays.copyOf(ends, 2 * count);
+                    }
+                    starts[count] = i;
+                }
+                depth++;
+            } else if (b == '}' || b == ']') {
+                depth--;
+                if (depth == 1 && b == '}') {
+                    ends[count++] = i + 1;
+                } else if (depth < 0) {
+                    throw new IOException("Unexpected '" + (char) b + "' at byte " + i);
+                }
+            }
+        }
+        if (depth != 0 || inString) throw new IOException("Unexpected end of input");
+
+        this.starts = Arrays.copyOf(starts, count);
+        this.ends = Arrays.copyOf(ends, count);
+    }
+
+    static JsonCharts read(InputStream in) throws IOException {
+        byte[] json = readAll(in);
+        return new JsonCharts(json, json.length);
+    }
+
+    static byte[] readAll(InputStream in) throws IOException {
+        byte[] bytes = new byte[Math.max(in.available(), 8192)];
+        int length = 0;
+        int read;
+        while ((read = in.read(bytes, length, bytes.length - length)) > 0) {
+            length += read;
+            if (length == bytes.length) bytes = Arrays.copyOf(bytes, 2 * length);
+        }
+        return length == bytes.length ? bytes : Arrays.copyOf(bytes, length);
+    }
+
+    int size() {
+        return starts.length;
+    }
+
+    /**
+     * @return a chart, parsing it if it was not parsed recently, so switching between charts is cheap
+     */
+    Chart get(int index) throws IOException {
+        synchronized (cache) {
+            Chart chart = cache.get(index);
+            if (chart == null) {
+                cache.put(index, chart = parse(index));
+            }
+            return chart;
+        }
+    }
+
+    /**
+     * @return a newly parsed chart, bypassing the cache, e. g. to convert all of them, see {@link ChartFile}
+     */
+    Chart parse(int index) throws IOException {
+        return new ChartParser(json, starts[index], ends[index]).readChart();
+    }
+
+}
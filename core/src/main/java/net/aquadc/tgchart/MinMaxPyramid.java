@@ -0,0 +1,235 @@
+package net.aquadc.tgchart;
+
+import java.util.Arrays;
+
+/**
+ * Multi-resolution min/max index over column values.
+ * Level {@code k} splits values into buckets of {@code 1 << (k + MIN_SHIFT)} points
+ * and remembers where the smallest and the largest value of each bucket are.
+ * Knowing first, min, max, and last point of a bucket is enough
+ * to draw a polyline which looks exactly like the original one (M4 sampling),
+ * if a bucket is not wider than a pixel.
+ * Levels also form a segment tree, so min & max of any range can be found in O(log n).
+ * Values may be appended, then {@link #sync()} catches up with them.
+ * If some values were changed, {@link #truncate} forgets them, so they are indexed again by {@link #sync()}.
+ */
+final class MinMaxPyramid {
+
+    /** Buckets of 1 and 2 points are useless: their min & max are the points themselves. */
+    static final int MIN_SHIFT = 2;
+
+    private final ColumnValues values;
+    private int length; // how many values are indexed
+    private int levels;
+    private int[][] minIndices; // [level][bucket], may have extra capacity
+    private int[][] maxIndices;
+
+    MinMaxPyramid(ColumnValues values) {
+        this.values = values;
+        this.minIndices = new int[0][];
+        this.maxIndices = new int[0][];
+        int length = values.size();
+        int levels = 0;
+        while ((1 << (levels + MIN_SHIFT)) < length) levels++;
+
+        if (levels > 0) {
+            this.length = length;
+            // the finest level is built from raw values, coarser ones are built from finer ones
+            for (int level = 0; level < levels; level++) {
+                addLevel();
+            }
+        } else {
+            sync();
+        }
+    }
+
+    /**
+     * Wraps already built indices, e. g. read from {@link ChartFile}.
+     */
+    MinMaxPyramid(ColumnValues values, int[][] minIndices, int[][] maxIndices) {
+        this.values = values;
+        this.length = values.size();
+        this.levels = minIndices.length;
+        this.minIndices = minIndices;
+        this.maxIndices = maxIndices;
+    }
+
+    /**
+     * Indexes values appended since the last call. Costs O(log n) per value.
+     */
+    void sync() {
+        ColumnValues values = this.values;
+        for (int size = values.size(); length < size; ) {
+            int i = length++;
+            double v = values.get(i);
+            for (int level = 0; level < levels; level++) {
+                int shift = level + MIN_SHIFT;
+                int bucket = i >> shift;
+                int[] mins = minIndices[level] = grow(minIndices[level], bucket);
+                int[] maxs = maxIndices[level] = grow(maxIndices[level], bucket);
+                if ((i & ((1 << shift) - 1)) == 0) { // first value of a new bucket
+                    mins[bucket] = maxs[bucket] = i;
+                } else {
+                    if (v < values.get(mins[bucket])) mins[bucket] = i;
+                    if (v > values.get(maxs[bucket])) maxs[bucket] = i;
+                }
+            }
+            if ((1 << (levels + MIN_SHIFT)) < length) {
+                addLevel(); // it's tiny: it has only two buckets
+            }
+        }
+    }
+
+    /**
+     * Forgets values from {@param length} on, e. g. because they were changed. Costs O(log n):
+     * buckets which end before it are kept, and a partial bucket of each level is rebuilt from finer ones.
+     */
+    void truncate(int length) {
+        if (length >= this.length) return;
+        this.length = length;
+        if (length == 0) return; // sync() starts every bucket from scratch
+        ColumnValues values = this.values;
+        for (int level = 0; level < levels; level++) {
+            int shift = level + MIN_SHIFT;
+            int bucket = length >> shift;
+            int first = bucket << shift;
+            if (first == length) continue; // the bucket is not started yet, sync() will start it
+            int[] mins = minIndices[level], maxs = maxIndices[level];
+            int minIdx, maxIdx;
+            if (level == 0) {
+                minIdx = maxIdx = first;
+                for (int i = first + 1; i < length; i++) {
+                    double v = values.get(i);
+                    if (v < values.get(minIdx)) minIdx = i;
+                    if (v > values.get(maxIdx)) maxIdx = i;
+                }
+            } else {
+                // one or two finer buckets, which are either complete or rebuilt just now
+                int[] fineMins = minIndices[level - 1], fineMaxs = maxIndices[level - 1];
+                int l = 2 * bucket, r = l + 1;
+                minIdx = fineMins[l];
+                maxIdx = fineMaxs[l];
+                if ((r << (shift - 1)) < length) {
+                    if (values.get(fineMins[r]) < values.get(minIdx)) minIdx = fineMins[r];
+                    if (values.get(fineMaxs[r]) > values.get(maxIdx)) maxIdx = fineMaxs[r];
+                }
+            }
+            mins[bucket] = minIdx;
+            maxs[bucket] = maxIdx;
+        }
+    }
+
+    private void addLevel() {
+        int level = levels++;
+        int length = this.length;
+        int size = 1 << (level + MIN_SHIFT);
+        int buckets = (length + size - 1) / size;
+        int[] mins = new int[buckets];
+        int[] maxs = new int[buckets];
+        if (level == 0) {
+            for (int b = 0; b < buckets; b++) {
+                int from = b * size;
+                int to = Math.min(from + size, length);
+                int minIdx = from, maxIdx = from;
+                double min = values.get(from), max = min;
+                for (int i = from + 1; i < to; i++) {
+                    double v = values.get(i);
+                    if (v < min) { min = v; minIdx = i; }
+                    if (v > max) { max = v; maxIdx = i; }
+                }
+                mins[b] = minIdx;
+                maxs[b] = maxIdx;
+            }
+        } else {
+            // two buckets into one
+            int[] fineMins = minIndices[level - 1], fineMaxs = maxIndices[level - 1];
+            int fineBuckets = (length + (size >> 1) - 1) / (size >> 1);
+            for (int b = 0; b < buckets; b++) {
+                int l = 2 * b, r = l + 1;
+                if (r < fineBuckets) {
+                    mins[b] = values.get(fineMins[r]) < values.get(fineMins[l]) ? fineMins[r] : fineMins[l];
+                    maxs[b] = values.get(fineMaxs[r]) > values.get(fineMaxs[l]) ? fineMaxs[r] : fineMaxs[l];
+                } else {
+                    mins[b] = fineMins[l];
+                    maxs[b] = fineMaxs[l];
+                }
+            }
+        }
+        if (level == minIndices.length) {
+            minIndices = Arrays.copyOf(minIndices, level + 1);
+            maxIndices = Arrays.copyOf(maxIndices, level + 1);
+        }
+        minIndices[level] = mins;
+        maxIndices[level] = maxs;
+    }
+
+    private static int[] grow(int[] array, int index) {
+        return index < array.length ? array : Arrays.copyOf(array, Math.max(index + 1, array.length + (array.length >> 1)));
+    }
+
+    int levels() {
+        return levels;
+    }
+
+    /**
+     * @return a level where buckets are not bigger than {@param pointsPerBucket}, or -1 if raw values should be used
+     */
+    int levelFor(float pointsPerBucket) {
+        if (!(pointsPerBucket >= 1 << MIN_SHIFT)) return -1; // also handles NaN
+        int shift = 31 - Integer.numberOfLeadingZeros((int) Math.min(pointsPerBucket, Integer.MAX_VALUE));
+        return Math.min(shift - MIN_SHIFT, levels() - 1);
+    }
+
+    static int bucketShift(int level) {
+        return level + MIN_SHIFT;
+    }
+
+    int bucketMinIndex(int level, int bucket) {
+        return minIndices[level][bucket];
+    }
+
+    int bucketMaxIndex(int level, int bucket) {
+        return maxIndices[level][bucket];
+    }
+
+    /**
+     * @return index of the smallest value in [from; to]
+     */
+    int minIndex(int from, int to) {
+        return extremumIndex(from, to, minIndices, false);
+    }
+
+    /**
+     * @return index of the largest value in [from; to]
+     */
+    int maxIndex(int from, int to) {
+        return extremumIndex(from, to, maxIndices, true);
+    }
+
+    private int extremumIndex(int from, int to, int[][] indices, boolean max) {
+        ColumnValues values = this.values;
+        int maxShift = levels - 1 + MIN_SHIFT;
+        int bestIdx = from;
+        double best = values.get(from);
+        int i = from;
+        while (i <= to) {
+            // take the biggest bucket which starts at i and fits into the range
+            int shift = Math.min(Integer.numberOfTrailingZeros(i), 31 - Integer.numberOfLeadingZeros(to - i + 1));
+            shift = Math.min(shift, maxShift);
+            int idx;
+            if (shift >= MIN_SHIFT) {
+                idx = indices[shift - MIN_SHIFT][i >> shift];
+                i += 1 << shift;
+            } else {
+                idx = i++;
+            }
+            double v = values.get(idx);
+            if (max ? v > best : v < best) {
+                best = v;
+                bestIdx = idx;
+            }
+        }
+        return bestIdx;
+    }
+
+}
@@ -0,0 +1,362 @@
+package net.aquadc.tgchart;
+
+import androidx.annotation.ColorInt;
+
+/**
+ * A chart for endless streams which takes constant memory.
+ * Recent points are kept as is, older ones are rolled up into buckets of coarser tiers
+ * which remember min, max, and average of each column. The oldest buckets of the coarsest tier are dropped.
+ * All tiers are ring buffers of primitives, nothing is allocated while appending.
+ *
+ * {@link #chart} shows the whole history, so it can be drawn with {@code ChartDrawable}:
+ * a bucket is shown as min and max of each column at their own X, so it has two points per column.
+ * Between its own min and max, a column is interpolated linearly, so it looks the same as if they were its only points.
+ * So zoomed-out charts are drawn from pre-aggregated buckets.
+ * Rolling up changes only the tail of the chart, and indices are rebuilt only there,
+ * unless the oldest bucket is dropped.
+ */
+public final class RollingChart {
+
+    public final Chart chart;
+
+    private final int colCount;
+    private final int bucketPoints; // how many points show a bucket: min & max of each column
+
+    // recent points, a ring buffer
+    private final double[] rawX;
+    private final double[][] rawY; // [column][point]
+    private int rawStart, rawSize;
+    private double lastX = Double.NEGATIVE_INFINITY;
+
+    private final Tier[] tiers; // from finest to coarsest
+
+    // scratch for laying out a bucket: extremes, [2 * column] goes before [2 * column + 1]
+    private final double[] extremeX, extremeY;
+    private final int[] order; // extremes sorted by X
+    private final int[] positions; // [extreme]: its index in order
+
+    /**
+     * @param rawCapacity how many recent points to keep as is
+     * @param bucketSizes how many items of the previous (finer) tier make a bucket of each tier,
+     *                    e. g. {@code {60, 60}} for minutes and hours if points come every second
+     * @param capacities  how many buckets each tier keeps
+     */
+    public RollingChart(String[] names, @ColorInt int[] colours, int rawCapacity, int[] bucketSizes, int[] capacities) {
+        int colCount = names.length;
+        if (colCount == 0 || colours.length != colCount) {
+            throw new IllegalArgumentException("need at least one column, got " + colCount + " names and " + colours.length + " colours");
+        }
+        int tierCount = bucketSizes.length;
+        if (tierCount == 0 || capacities.length != tierCount) {
+            throw new IllegalArgumentException("need at least one tier, got " + tierCount + " bucket sizes and " + capacities.length + " capacities");
+        }
+        this.colCount = colCount;
+        this.bucketPoints = 2 * colCount;
+        this.rawX = new double[rawCapacity];
+        this.rawY = new double[colCount][rawCapacity];
+        this.tiers = new Tier[tierCount];
+        for (int t = 0; t < tierCount; t++) {
+            int finerCapacity = t == 0 ? rawCapacity : capacities[t - 1];
+            if (bucketSizes[t] < 1 || bucketSizes[t] > finerCapacity || capacities[t] < 1) {
+                throw new IllegalArgumentException("tier " + t + ": bucket size " + bucketSizes[t] +
+                        " must be in [1; " + finerCapacity + "], capacity " + capacities[t] + " must be positive");
+            }
+            tiers[t] = new Tier(bucketSizes[t], capacities[t], colCount);
+        }
+        this.extremeX = new double[bucketPoints];
+        this.extremeY = new double[bucketPoints];
+        this.order = new int[bucketPoints];
+        this.positions = new int[bucketPoints];
+
+        Chart.Column[] columns = new Chart.Column[colCount];
+        for (int i = 0; i < colCount; i++) {
+            columns[i] = new Chart.Column(names[i], colours[i], new Values(i), Double.NaN, Double.NaN);
+        }
+        this.chart = new Chart(new Chart.Column("x", 0 /*transparent*/, new Values(-1), Double.NaN, Double.NaN), columns, Double.NaN);
+        this.chart.rolling = this;
+    }
+
+    /**
+     * Adds a point to the end of the chart. When recent points are full, the oldest of them are rolled up:
+     * it costs O(bucket size) to aggregate them, and O(log n) plus the changed tail to re-index columns.
+     * Not thread-safe, call it on the thread which draws the chart, and invalidate drawables afterwards.
+     * @param x  X value, must not be less than the last one
+     * @param ys Y value for each column
+     */
+    public void append(double x, double... ys) {
+        if (ys.length != colCount) {
+            throw new IllegalArgumentException("expected " + colCount + " Y values, got " + ys.length);
+        }
+        if (!(x >= lastX)) {
+            throw new IllegalArgumentException("X values must not decrease: " + x + " < " + lastX);
+        }
+
+        Chart chart = this.chart;
+        if (rawSize == rawX.length) {
+            // roll up a whole bucket at once, so indices are rebuilt once per bucket, not once per point
+            int from = firstPointOf(rollRaw());
+            chart.changed(from);
+            int last = size() - 1;
+            Chart.Column xs = chart.x;
+            xs.changed(from);
+            xs.minValue = valueAt(-1, 0); // sorted
+            xs.maxValue = valueAt(-1, last);
+            for (int c = 0; c < colCount; c++) {
+                Chart.Column column = chart.columns[c];
+                column.changed(from);
+                // buckets keep extremes, so bounds change only when the oldest one is dropped, pyramids know them
+                MinMaxPyramid pyramid = column.pyramid();
+                column.minValue = column.values.get(pyramid.minIndex(0, last));
+                column.maxValue = column.values.get(pyramid.maxIndex(0, last));
+            }
+        }
+
+        int slot = rawSlot(rawSize++);
+        rawX[slot] = x;
+        for (int c = 0; c < colCount; c++) {
+            rawY[c][slot] = ys[c];
+        }
+        lastX = x;
+        chart.x.appended(x);
+        for (int c = 0; c < colCount; c++) {
+            chart.columns[c].appended(ys[c]);
+        }
+    }
+
+    /**
+     * @return average of values represented by the point at {@param index} in {@link #chart}:
+     *         bucket average for rolled-up points, the value itself for recent ones
+     */
+    public double averageAt(int column, int index) {
+        for (int t = tiers.length - 1; t >= 0; t--) {
+            Tier tier = tiers[t];
+            int points = tier.size * bucketPoints;
+            if (index < points) {
+                int b = tier.slot(index / bucketPoints);
+                return tier.sums[column][b] / tier.counts[b];
+            }
+            index -= points;
+        }
+        return rawY[column][rawSlot(checkRawIndex(index))];
+    }
+
+    private int size() {
+        int size = rawSize;
+        for (Tier tier : tiers) size += tier.size * bucketPoints;
+        return size;
+    }
+
+    /**
+     * @param column column index, or -1 for X
+     */
+    private double valueAt(int column, int index) {
+        // coarsest (oldest) tier goes first
+        for (int t = tiers.length - 1; t >= 0; t--) {
+            Tier tier = tiers[t];
+            int points = tier.size * bucketPoints;
+            if (index < points) {
+                int point = tier.slot(index / bucketPoints) * bucketPoints + index % bucketPoints;
+                return column < 0 ? tier.xs[point] : tier.ys[column][point];
+            }
+            index -= points;
+        }
+        int slot = rawSlot(checkRawIndex(index));
+        return column < 0 ? rawX[slot] : rawY[column][slot];
+    }
+
+    private int checkRawIndex(int index) {
+        if (index < 0 || index >= rawSize) throw new IndexOutOfBoundsException("index " + index + " is out of bounds");
+        return index;
+    }
+
+    private int rawSlot(int index) {
+        index += rawStart;
+        return index < rawX.length ? index : index - rawX.length;
+    }
+
+    /**
+     * @param tier the coarsest tier which has changed, or tiers.length if the oldest bucket was dropped
+     * @return index of the first changed point: the last bucket of that tier is new, finer tiers have changed too
+     */
+    private int firstPointOf(int tier) {
+        if (tier == tiers.length) return 0;
+        int index = (tiers[tier].size - 1) * bucketPoints;
+        for (int t = tier + 1; t < tiers.length; t++) index += tiers[t].size * bucketPoints;
+        return index;
+    }
+
+    /**
+     * Rolls the oldest raw points up into a bucket of the first tier.
+     * @return the coarsest tier which has changed, or tiers.length if the oldest bucket was dropped
+     */
+    private int rollRaw() {
+        Tier into = tiers[0];
+        int changed = into.size == into.capacity() ? rollTier(0) : 0;
+        int n = into.bucketSize;
+        int b = into.add();
+        into.counts[b] = n;
+        for (int c = 0; c < colCount; c++) {
+            double[] ys = rawY[c];
+            int minI = 0, maxI = 0;
+            double min = ys[rawSlot(0)], max = min, sum = 0;
+            for (int i = 0; i < n; i++) {
+                double v = ys[rawSlot(i)];
+                if (v < min) { min = v; minI = i; }
+                if (v > max) { max = v; maxI = i; }
+                sum += v;
+            }
+            into.mins[c][b] = min;
+            into.maxs[c][b] = max;
+            into.minXs[c][b] = rawX[rawSlot(minI)];
+            into.maxXs[c][b] = rawX[rawSlot(maxI)];
+            into.sums[c][b] = sum;
+            into.minFirst[c][b] = minI <= maxI;
+        }
+        layOut(into, b);
+        rawStart = rawSlot(n);
+        rawSize -= n;
+        return changed;
+    }
+
+    /**
+     * Rolls the oldest buckets of tier {@param t} up into a bucket of the next tier, or drops the oldest one.
+     * @return the coarsest tier which has changed, or tiers.length if the oldest bucket was dropped
+     */
+    private int rollTier(int t) {
+        Tier from = tiers[t];
+        if (t == tiers.length - 1) {
+            from.drop(1);
+            return tiers.length;
+        }
+
+        Tier into = tiers[t + 1];
+        int changed = into.size == into.capacity() ? rollTier(t + 1) : t + 1;
+        int n = into.bucketSize;
+        int b = into.add();
+        int count = 0;
+        for (int k = 0; k < n; k++) count += from.counts[from.slot(k)];
+        into.counts[b] = count;
+        for (int c = 0; c < colCount; c++) {
+            double[] mins = from.mins[c], maxs = from.maxs[c], sums = from.sums[c];
+            int minK = 0, maxK = 0;
+            double min = mins[from.slot(0)], max = maxs[from.slot(0)], sum = 0;
+            for (int k = 0; k < n; k++) {
+                int s = from.slot(k);
+                if (mins[s] < min) { min = mins[s]; minK = k; }
+                if (maxs[s] > max) { max = maxs[s]; maxK = k; }
+                sum += sums[s];
+            }
+            int minS = from.slot(minK), maxS = from.slot(maxK);
+            into.mins[c][b] = min;
+            into.maxs[c][b] = max;
+            into.minXs[c][b] = from.minXs[c][minS];
+            into.maxXs[c][b] = from.maxXs[c][maxS];
+            into.sums[c][b] = sum;
+            into.minFirst[c][b] = minK == maxK ? from.minFirst[c][minS] : minK < maxK;
+        }
+        layOut(into, b);
+        from.drop(n);
+        return changed;
+    }
+
+    /**
+     * Fills points of a bucket from its extremes: they are sorted by X,
+     * and each column takes its own extremes, or a value interpolated between them at others' X.
+     */
+    private void layOut(Tier tier, int b) {
+        double[] extremeX = this.extremeX, extremeY = this.extremeY;
+        int[] order = this.order, positions = this.positions;
+        int points = bucketPoints;
+        for (int c = 0; c < colCount; c++) {
+            boolean minFirst = tier.minFirst[c][b];
+            extremeX[2 * c] = minFirst ? tier.minXs[c][b] : tier.maxXs[c][b];
+            extremeY[2 * c] = minFirst ? tier.mins[c][b] : tier.maxs[c][b];
+            extremeX[2 * c + 1] = minFirst ? tier.maxXs[c][b] : tier.minXs[c][b];
+            extremeY[2 * c + 1] = minFirst ? tier.maxs[c][b] : tier.mins[c][b];
+        }
+        // stable insertion sort: there are just a few of them, and the first extreme of a column stays before the second one
+        for (int e = 0; e < points; e++) {
+            int k = e;
+            for (; k > 0 && extremeX[order[k - 1]] > extremeX[e]; k--) order[k] = order[k - 1];
+            order[k] = e;
+        }
+        int base = b * points;
+        for (int k = 0; k < points; k++) {
+            positions[order[k]] = k;
+            tier.xs[base + k] = extremeX[order[k]];
+        }
+        for (int c = 0; c < colCount; c++) {
+            int p1 = positions[2 * c], p2 = positions[2 * c + 1];
+            double x1 = extremeX[2 * c], y1 = extremeY[2 * c];
+            double x2 = extremeX[2 * c + 1], y2 = extremeY[2 * c + 1];
+            double[] ys = tier.ys[c];
+            for (int k = 0; k < points; k++) {
+                double y;
+                if (k <= p1) y = y1;
+                else if (k >= p2) y = y2;
+                else if (x2 == x1) y = y1; // others' extremes at the same X
+                else y = y1 + (y2 - y1) * ((tier.xs[base + k] - x1) / (x2 - x1));
+                ys[base + k] = y;
+            }
+        }
+    }
+
+    private static final class Tier {
+        final int bucketSize; // how many items of the finer tier make a bucket
+        final double[][] mins, maxs, sums; // [column][bucket]
+        final double[][] minXs, maxXs; // [column][bucket]: where min & max are
+        final boolean[][] minFirst; // whether min goes before max
+        final int[] counts; // how many raw points a bucket represents
+        final double[] xs; // [bucket * bucketPoints + point]: X of all extremes, sorted
+        final double[][] ys; // [column][bucket * bucketPoints + point]: values at these X
+        int start, size;
+
+        Tier(int bucketSize, int capacity, int colCount) {
+            this.bucketSize = bucketSize;
+            this.mins = new double[colCount][capacity];
+            this.maxs = new double[colCount][capacity];
+            this.sums = new double[colCount][capacity];
+            this.minXs = new double[colCount][capacity];
+            this.maxXs = new double[colCount][capacity];
+            this.minFirst = new boolean[colCount][capacity];
+            this.counts = new int[capacity];
+            this.xs = new double[capacity * 2 * colCount];
+            this.ys = new double[colCount][capacity * 2 * colCount];
+        }
+
+        int capacity() {
+            return counts.length;
+        }
+
+        /** @return ring buffer slot of the {@param index}th oldest bucket */
+        int slot(int index) {
+            index += start;
+            return index < counts.length ? index : index - counts.length;
+        }
+
+        /** @return slot for a new bucket */
+        int add() {
+            return slot(size++);
+        }
+
+        void drop(int count) {
+            start = slot(count);
+            size -= count;
+        }
+    }
+
+    /** A column of {@link #chart}. */
+    private final class Values extends ColumnValues {
+        private final int column;
+        Values(int column) {
+            this.column = column;
+        }
+        @Override public int size() {
+            return RollingChart.this.size();
+        }
+        @Override public double get(int index) {
+            return valueAt(column, index);
+        }
+    }
+
+}
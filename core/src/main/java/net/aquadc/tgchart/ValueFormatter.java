@@ -0,0 +1,8 @@
+package net.aquadc.tgchart;
+
+/**
+ * Turns X or Y values into labels.
+ */
+public interface ValueFormatter {
+    void formatValueInto(StringBuilder sb, double value);
+}
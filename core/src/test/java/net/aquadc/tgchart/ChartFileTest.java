@@ -0,0 +1,82 @@
+package net.aquadc.tgchart;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public final class ChartFileTest {
+
+    @Rule public final TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test public void roundTrip() throws IOException {
+        byte[] json = ChartParserTest.bytes("[" + chartJson(300, true, 1) + "," + chartJson(100, false, 2) + "," + ChartParserTest.JSON.substring(1));
+        JsonCharts source = new JsonCharts(json, json.length);
+        File file = tmp.newFile("charts.bin");
+        ChartFile.convert(source, file);
+
+        Chart[] mapped = ChartFile.map(file);
+        assertEquals(source.size(), mapped.length);
+        for (int i = 0; i < mapped.length; i++) {
+            assertSame(source.parse(i), mapped[i]);
+        }
+        assertTrue(mapped[0].x.values instanceof ColumnValues.Stride);
+        ChartParserTest.assertFirst(mapped[2]);
+        ChartParserTest.assertSecond(mapped[3]);
+    }
+
+    private static void assertSame(Chart expected, Chart actual) {
+        assertEquals(expected.xStride(), actual.xStride(), 0);
+        assertColumn(expected.x, actual.x);
+        assertEquals(expected.columns.length, actual.columns.length);
+        for (int ci = 0; ci < expected.columns.length; ci++) {
+            assertColumn(expected.columns[ci], actual.columns[ci]);
+        }
+    }
+    private static void assertColumn(Chart.Column expected, Chart.Column actual) {
+        assertEquals(expected.name, actual.name);
+        assertEquals(expected.colour, actual.colour);
+        assertEquals(expected.minValue, actual.minValue, 0);
+        assertEquals(expected.maxValue, actual.maxValue, 0);
+        int length = expected.values.size();
+        assertEquals(length, actual.values.size());
+        for (int i = 0; i < length; i++) {
+            assertEquals(expected.values.get(i), actual.values.get(i), 0);
+        }
+
+        // stored pyramid answers like a freshly built one
+        MinMaxPyramid fresh = expected.pyramid(), stored = actual.pyramid();
+        assertEquals(fresh.levels(), stored.levels());
+        for (int from = 0; from < length; from += 7) {
+            for (int to = from; to < length; to += 13) {
+                assertEquals(fresh.minIndex(from, to), stored.minIndex(from, to));
+                assertEquals(fresh.maxIndex(from, to), stored.maxIndex(from, to));
+            }
+        }
+    }
+
+    private static String chartJson(int length, boolean evenX, long seed) {
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder("{\"columns\":[[\"x\"");
+        long x = 1542412800000L;
+        for (int i = 0; i < length; i++) {
+            sb.append(',').append(x);
+            x += evenX ? 86400000 : 1 + random.nextInt(86400000);
+        }
+        sb.append("],[\"ints\"");
+        for (int i = 0; i < length; i++) sb.append(',').append(random.nextInt(100000) - 5000);
+        sb.append("],[\"doubles\"");
+        for (int i = 0; i < length; i++) sb.append(',').append(random.nextDouble() * 100);
+        sb.append("]],\"types\":{\"x\":\"x\",\"ints\":\"line\",\"doubles\":\"line\"}")
+                .append(",\"names\":{\"ints\":\"Ints\",\"doubles\":\"Doubles —\"}")
+                .append(",\"colors\":{\"ints\":\"#123456\",\"doubles\":\"#FF654321\"}}");
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,108 @@
+package net.aquadc.tgchart;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public final class ChartGeometryTest {
+
+    @Test public void unevenAfterEvenAppend() {
+        Chart chart = new Chart(
+                new Chart.Column("x", 0, new DoubleArrayList(), Double.NaN, Double.NaN),
+                new Chart.Column[] { new Chart.Column("y", 0, new DoubleArrayList(), Double.NaN, Double.NaN) });
+        ChartGeometry geometry = ChartGeometry.acquire(chart);
+
+        chart.append(1000, 1);
+        geometry.normalizeIfNeeded();
+        chart.append(2000, 2); // X are even for a while
+        geometry.normalizeIfNeeded();
+        assertEquals(1, geometry.normalizedX(1), 0);
+        chart.append(3003, 3);
+        geometry.normalizeIfNeeded();
+
+        assertEquals(0, geometry.normalizedX(0), 1e-6);
+        assertEquals(1000.0 / 2003, geometry.normalizedX(1), 1e-6);
+        assertEquals(1, geometry.normalizedX(2), 1e-6);
+        assertEquals(0, geometry.indexOfClosest(.2f));
+        assertEquals(1, geometry.indexOfClosest(.5f));
+        assertEquals(2, geometry.indexOfClosest(.9f));
+        geometry.release();
+    }
+
+    @Test public void appendToUneven() {
+        Chart chart = Chart.appendable(new Chart(
+                new Chart.Column("x", 0, ColumnValues.of(new double[] { 0, 1, 3 }), 0, 3),
+                new Chart.Column[0]));
+        ChartGeometry geometry = ChartGeometry.acquire(chart);
+        geometry.normalizeIfNeeded();
+        assertEquals(1 / 3f, geometry.normalizedX(1), 1e-6);
+
+        chart.append(6);
+        geometry.normalizeIfNeeded(); // only the new point is normalized, the rest are rescaled
+        assertEquals(1 / 6f, geometry.normalizedX(1), 1e-6);
+        assertEquals(.5f, geometry.normalizedX(2), 1e-6);
+        assertEquals(1, geometry.normalizedX(3), 1e-6);
+        assertEquals(3, geometry.indexOfClosest(.8f));
+        geometry.release();
+    }
+
+    @Test public void preparedIsTakenAtOnce() {
+        Chart chart = new Chart(
+                new Chart.Column("x", 0, ColumnValues.of(new double[] { 0, 1, 3, 4 }), 0, 4),
+                new Chart.Column[] { new Chart.Column("y", 0, ColumnValues.of(new double[] { 5, 2, 7, 1 }), 1, 7) });
+        ChartPreprocessor.prepare(chart);
+        Chart.Prepared prepared = chart.prepared;
+        assertEquals(1, prepared.pyramids.length);
+        assertEquals(4, prepared.x.length);
+
+        ChartGeometry geometry = ChartGeometry.acquire(chart);
+        assertNull(chart.prepared);
+        assertSame(prepared.pyramids[0], chart.columns[0].pyramid());
+        geometry.normalizeIfNeeded();
+        assertEquals(.75f, geometry.normalizedX(2), 1e-6);
+
+        geometry.release(); // gives normalized X back
+        assertSame(prepared.x.values, chart.prepared.x.values);
+        assertNull(chart.prepared.pyramids);
+    }
+
+    @Test public void bucketsAreNotWiderThanPixel() {
+        int length = 17854, width = 1000;
+        Chart chart = new Chart(
+                new Chart.Column("x", 0, new ColumnValues.Stride(0, 1, length), 0, length - 1),
+                new Chart.Column[0]);
+        ChartGeometry geometry = ChartGeometry.acquire(chart);
+        geometry.normalizeIfNeeded();
+        MinMaxPyramid pyramid = new MinMaxPyramid(new ColumnValues.Doubles(new double[length]));
+        for (float fraction : new float[] { 1f, .5f, .1f, .01f, .001f }) {
+            int first = geometry.indexOfClosest(.3f * (1 - fraction));
+            int last = geometry.indexOfClosest(.3f * (1 - fraction) + fraction);
+            float pointsPerPx = ChartGeometry.pointsPerPx(first, last, width);
+            int level = pyramid.levelFor(pointsPerPx);
+            float pxPerPoint = width / (float) (last - first);
+            String msg = "visible fraction " + fraction;
+            if (level < 0) {
+                // raw points are used only when even the finest buckets would be wider than a pixel
+                assertTrue(msg, (1 << MinMaxPyramid.bucketShift(0)) * pxPerPoint > 1);
+            } else {
+                assertTrue(msg, (1 << MinMaxPyramid.bucketShift(level)) * pxPerPoint <= 1);
+                if (level + 1 < pyramid.levels()) {
+                    assertTrue(msg, (1 << MinMaxPyramid.bucketShift(level + 1)) * pxPerPoint > 1); // the coarsest fitting one
+                }
+            }
+        }
+        assertEquals(1.7854f, ChartGeometry.pointsPerPx(0, length / 10, width), .01f);
+        geometry.release();
+    }
+
+    @Test public void niceStep() {
+        assertEquals(1, ChartGeometry.niceStep(1.2), 0);
+        assertEquals(20, ChartGeometry.niceStep(17), 0);
+        assertEquals(500, ChartGeometry.niceStep(420), 1e-9);
+        assertEquals(.05, ChartGeometry.niceStep(.04), 1e-12);
+    }
+
+}
@@ -0,0 +1,118 @@
+package net.aquadc.tgchart;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public final class ChartParserTest {
+
+    static final String JSON = "[" +
+            "{\"columns\":[[\"x\",1542412800000,1542499200000,1542672000000],[\"y0\",37,-20,0.5e2],[\"y1\",22,1.25,3]]," +
+            "\"types\":{\"y0\":\"line\",\"y1\":\"line\",\"x\":\"x\"}," +
+            "\"names\":{\"y0\":\"Joined \\\"{[\\\" \\u00e9\",\"y1\":\"Left\"}," +
+            "\"colors\":{\"y0\":\"#3DC23F\",\"y1\":\"#80F34C3C\"},\"extra\":[{\"a\":[1,2]},\"}\"]}," +
+            " {\"columns\":[[\"y\",1,2,3,4],[\"t\",10,20,30,40]],\"types\":{\"t\":\"x\",\"y\":\"line\"}," +
+            "\"names\":{\"y\":\"Y\"},\"colors\":{\"y\":\"#000000\"}}" +
+            "]";
+
+    @Test public void streaming() throws IOException {
+        List<Chart> charts = new ChartParser(new ByteArrayInputStream(bytes(JSON))).readCharts();
+        assertEquals(2, charts.size());
+        assertFirst(charts.get(0));
+        assertSecond(charts.get(1));
+    }
+
+    @Test public void jsonCharts() throws IOException {
+        JsonCharts charts = JsonCharts.read(new ByteArrayInputStream(bytes(JSON)));
+        assertEquals(2, charts.size());
+        assertFirst(charts.parse(0));
+        assertSecond(charts.parse(1));
+    }
+
+    @Test public void jsonChartsCache() throws IOException {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 6; i++) {
+            json.append(JSON, 1, JSON.length() - 1).append(i < 5 ? "," : "]");
+        }
+        byte[] bytes = bytes(json.toString());
+        JsonCharts charts = new JsonCharts(bytes, bytes.length);
+        assertEquals(12, charts.size());
+        Chart first = charts.get(0);
+        assertSame(first, charts.get(0));
+        assertNotSame(first, charts.parse(0));
+        for (int i = 1; i < charts.size(); i++) charts.get(i); // evicts the first one
+        assertNotSame(first, charts.get(0));
+        assertFirst(charts.get(0));
+    }
+
+    @Test(expected = IOException.class) public void jsonChartsUnbalanced() throws IOException {
+        byte[] json = bytes("[{\"columns\":[}]");
+        new JsonCharts(json, json.length);
+    }
+
+    @Test public void missingNames() throws IOException {
+        try {
+            new ChartParser(new ByteArrayInputStream(bytes(
+                    "{\"columns\":[[\"x\",1],[\"y\",2]],\"types\":{\"x\":\"x\",\"y\":\"line\"},\"colors\":{}}"
+            ))).readChart();
+            fail();
+        } catch (NoSuchElementException expected) {
+        }
+    }
+
+    @Test public void colours() {
+        assertEquals(0xFF3DC23F, ChartParser.parseColour("#3DC23F"));
+        assertEquals(0x80F34C3C, ChartParser.parseColour("#80f34c3c"));
+        try {
+            ChartParser.parseColour("#3DC23");
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    static void assertFirst(Chart chart) {
+        assertEquals(3, chart.x.values.size());
+        assertEquals(1542499200000.0, chart.x.values.get(1), 0);
+        assertEquals(1542412800000.0, chart.x.minValue, 0);
+        assertEquals(1542672000000.0, chart.x.maxValue, 0);
+        assertEquals(Double.NaN, chart.xStride(), 0);
+
+        assertEquals(2, chart.columns.length);
+        Chart.Column y0 = chart.columns[0];
+        assertEquals("Joined \"{[\" \u00e9", y0.name);
+        assertEquals(0xFF3DC23F, y0.colour);
+        assertEquals(-20, y0.values.get(1), 0);
+        assertEquals(50, y0.values.get(2), 0);
+        assertEquals(-20, y0.minValue, 0);
+        assertEquals(50, y0.maxValue, 0);
+
+        Chart.Column y1 = chart.columns[1];
+        assertEquals("Left", y1.name);
+        assertEquals(0x80F34C3C, y1.colour);
+        assertEquals(1.25, y1.values.get(1), 0);
+        assertEquals(1.25, y1.minValue, 0);
+        assertEquals(22, y1.maxValue, 0);
+    }
+
+    static void assertSecond(Chart chart) {
+        assertEquals(10, chart.xStride(), 0);
+        assertEquals(40, chart.x.values.get(3), 0);
+        assertEquals(1, chart.columns.length);
+        assertEquals("Y", chart.columns[0].name);
+        assertEquals(4, chart.columns[0].values.get(3), 0);
+    }
+
+    static byte[] bytes(String json) {
+        return json.getBytes(Charset.forName("UTF-8"));
+    }
+
+}
@@ -0,0 +1,62 @@
+package net.aquadc.tgchart;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public final class ColumnValuesTest {
+
+    @Test public void stride() {
+        ColumnValues values = assertEncoded(ColumnValues.Stride.class, new double[] { 10, 15, 20, 25 });
+        assertEquals(5, Chart.strideOf(values), 0);
+    }
+
+    @Test public void ints() {
+        Random random = new Random(1);
+        double[] values = new double[200];
+        for (int i = 0; i < values.length; i++) values[i] = random.nextInt(); // spread, packing won't help
+        assertEncoded(ColumnValues.Ints.class, values);
+    }
+
+    @Test public void packed() {
+        Random random = new Random(2);
+        double[] values = new double[1000];
+        long v = 1L << 40; // doesn't fit int, but neighbours are close
+        for (int i = 0; i < values.length; i++) values[i] = v += random.nextInt(100) - 30;
+        assertEncoded(ColumnValues.Packed.class, values);
+    }
+
+    @Test public void packedEdges() {
+        double[] values = new double[130];
+        for (int i = 0; i < 64; i++) values[i] = 7; // a block of equal values takes no bits
+        for (int i = 64; i < values.length; i++) values[i] = (i & 1) == 0 ? Long.MIN_VALUE / 2 : Long.MAX_VALUE / 2;
+        ColumnValues packed = new ColumnValues.Packed(values);
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(values[i], packed.get(i), 0);
+        }
+    }
+
+    @Test public void doubles() {
+        assertEncoded(ColumnValues.Doubles.class, new double[] { 1, 2.5, 3 });
+        assertEncoded(ColumnValues.Doubles.class, new double[] { 1, -0.0, 3 });
+        assertEncoded(ColumnValues.Doubles.class, new double[] { 1, Double.NaN, 3 });
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class) public void strideBounds() {
+        new ColumnValues.Stride(0, 1, 3).get(3);
+    }
+
+    private static ColumnValues assertEncoded(Class<? extends ColumnValues> type, double[] values) {
+        ColumnValues encoded = ColumnValues.of(values);
+        assertTrue(encoded.getClass().getSimpleName(), type.isInstance(encoded));
+        assertEquals(values.length, encoded.size());
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(Double.doubleToLongBits(values[i]), Double.doubleToLongBits(encoded.get(i)));
+        }
+        return encoded;
+    }
+
+}
@@ -0,0 +1,58 @@
+package net.aquadc.tgchart;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+public final class DateFormatterTest {
+
+    private TimeZone defaultTimeZone;
+
+    @Before public void setTimeZone() {
+        defaultTimeZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("America/New_York")); // has DST and a negative offset
+    }
+
+    @After public void restoreTimeZone() {
+        TimeZone.setDefault(defaultTimeZone);
+    }
+
+    @Test public void likeSimpleDateFormat() {
+        String[] patterns = { "MMM d", "E, MMM d", "d MMMM yyyy", "EEEE dd.MM.yy", "'Day' d 'of' MMM, ''yy", "M/d/y" };
+        Locale[] locales = { Locale.US, new Locale("ru"), Locale.GERMANY };
+        long from = new GregorianCalendar(1600, 0, 1).getTimeInMillis();
+        long to = new GregorianCalendar(2200, 0, 1).getTimeInMillis();
+        Random random = new Random(1);
+        StringBuilder sb = new StringBuilder();
+        for (String pattern : patterns) {
+            for (Locale locale : locales) {
+                DateFormatter formatter = new DateFormatter(pattern, locale);
+                SimpleDateFormat expected = new SimpleDateFormat(pattern, locale);
+                for (int k = 0; k < 2000; k++) {
+                    long millis = k < 2 ? k - 1 : from + (long) (random.nextDouble() * (to - from));
+                    sb.setLength(0);
+                    formatter.formatValueInto(sb, millis);
+                    assertEquals(pattern + " @ " + millis, expected.format(new Date(millis)), sb.toString());
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class) public void unsupportedLetter() {
+        new DateFormatter("HH:mm", Locale.US);
+    }
+
+    @Test(expected = IllegalArgumentException.class) public void unterminatedQuote() {
+        new DateFormatter("d 'of MMM", Locale.US);
+    }
+
+}
@@ -0,0 +1,103 @@
+package net.aquadc.tgchart;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public final class MinMaxPyramidTest {
+
+    @Test public void rangesMatchBruteForce() {
+        double[] values = randomValues(1000, 1);
+        MinMaxPyramid pyramid = new MinMaxPyramid(new ColumnValues.Doubles(values));
+        Random random = new Random(2);
+        for (int k = 0; k < 2000; k++) {
+            int from = random.nextInt(values.length);
+            int to = from + random.nextInt(values.length - from);
+            assertRange(values, pyramid, from, to);
+        }
+        assertRange(values, pyramid, 0, values.length - 1);
+    }
+
+    @Test public void syncIndexesAppendedValues() {
+        double[] values = randomValues(777, 3);
+        DoubleArrayList list = new DoubleArrayList();
+        MinMaxPyramid pyramid = new MinMaxPyramid(list);
+        for (int i = 0; i < values.length; i++) {
+            list.add(values[i]);
+            pyramid.sync();
+            if (i % 50 == 0 || i == values.length - 1) {
+                assertRange(values, pyramid, 0, i);
+                assertRange(values, pyramid, i / 3, i);
+            }
+        }
+        assertEquals(new MinMaxPyramid(new ColumnValues.Doubles(values)).levels(), pyramid.levels());
+    }
+
+    @Test public void truncateReindexesChangedTail() {
+        double[] values = randomValues(600, 5);
+        MinMaxPyramid pyramid = new MinMaxPyramid(new ColumnValues.Doubles(values));
+        Random random = new Random(6);
+        for (int k = 0; k < 50; k++) {
+            int from = random.nextInt(values.length);
+            for (int i = from; i < values.length; i++) values[i] = random.nextInt(1000); // like a roll-up
+            pyramid.truncate(from);
+            pyramid.sync();
+            assertRange(values, pyramid, 0, values.length - 1);
+            for (int q = 0; q < 40; q++) {
+                int f = random.nextInt(values.length);
+                assertRange(values, pyramid, f, f + random.nextInt(values.length - f));
+            }
+        }
+    }
+
+    @Test public void bucketsHoldTheirExtremes() {
+        double[] values = randomValues(300, 4);
+        MinMaxPyramid pyramid = new MinMaxPyramid(new ColumnValues.Doubles(values));
+        for (int level = 0; level < pyramid.levels(); level++) {
+            int shift = MinMaxPyramid.bucketShift(level);
+            for (int bucket = 0; (bucket << shift) < values.length; bucket++) {
+                int from = bucket << shift;
+                int to = Math.min(values.length, from + (1 << shift)) - 1;
+                assertEquals(values[bruteMin(values, from, to)], values[pyramid.bucketMinIndex(level, bucket)], 0);
+                assertEquals(values[bruteMax(values, from, to)], values[pyramid.bucketMaxIndex(level, bucket)], 0);
+            }
+        }
+    }
+
+    @Test public void levelFor() {
+        MinMaxPyramid pyramid = new MinMaxPyramid(new ColumnValues.Doubles(new double[1024]));
+        assertEquals(8, pyramid.levels());
+        assertEquals(-1, pyramid.levelFor(Float.NaN));
+        assertEquals(-1, pyramid.levelFor(3.9f));
+        assertEquals(0, pyramid.levelFor(4));
+        assertEquals(0, pyramid.levelFor(7.9f));
+        assertEquals(1, pyramid.levelFor(8));
+        assertEquals(7, pyramid.levelFor(1e9f));
+    }
+
+    private static void assertRange(double[] values, MinMaxPyramid pyramid, int from, int to) {
+        String range = "[" + from + "; " + to + "]";
+        assertEquals(range, values[bruteMin(values, from, to)], values[pyramid.minIndex(from, to)], 0);
+        assertEquals(range, values[bruteMax(values, from, to)], values[pyramid.maxIndex(from, to)], 0);
+    }
+    private static int bruteMin(double[] values, int from, int to) {
+        int idx = from;
+        for (int i = from + 1; i <= to; i++) if (values[i] < values[idx]) idx = i;
+        return idx;
+    }
+    private static int bruteMax(double[] values, int from, int to) {
+        int idx = from;
+        for (int i = from + 1; i <= to; i++) if (values[i] > values[idx]) idx = i;
+        return idx;
+    }
+
+    static double[] randomValues(int count, long seed) {
+        Random random = new Random(seed);
+        double[] values = new double[count];
+        for (int i = 0; i < count; i++) values[i] = random.nextInt(1000);
+        return values;
+    }
+
+}
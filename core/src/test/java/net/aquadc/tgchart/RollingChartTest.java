@@ -0,0 +1,161 @@
+package net.aquadc.tgchart;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public final class RollingChartTest {
+
+    private static RollingChart rollingChart() {
+        // 4 raw points, then buckets of 2 raw points, then buckets of 2 buckets
+        return new RollingChart(new String[] { "up", "down" }, new int[] { 0xFF000000, 0xFFFFFFFF },
+                4, new int[] { 2, 2 }, new int[] { 2, 2 });
+    }
+
+    @Test public void rollsUp() {
+        RollingChart rolling = rollingChart();
+        Chart chart = rolling.chart;
+        for (int x = 0; x <= 3; x++) rolling.append(x, x, -x);
+        assertEquals(0, chart.modCount);
+        assertValues(chart, 0, 1, 2, 3);
+
+        rolling.append(4, 4, -4); // 0 & 1 are rolled into a bucket: min & max of each column
+        assertEquals(1, chart.modCount);
+        assertEquals(0, chart.changedSince(0));
+        assertValues(chart, 0, 0, 1, 1, 2, 3, 4);
+        assertEquals(0.5, rolling.averageAt(0, 0), 0);
+        assertEquals(0.5, rolling.averageAt(0, 3), 0);
+        assertEquals(4, rolling.averageAt(0, 6), 0);
+
+        rolling.append(5, 5, -5);
+        rolling.append(6, 6, -6); // 2 & 3 are rolled, the first bucket stays as is
+        assertEquals(4, chart.changedSince(1));
+        assertValues(chart, 0, 0, 1, 1, 2, 2, 3, 3, 4, 5, 6);
+
+        for (int x = 7; x <= 8; x++) rolling.append(x, x, -x); // two buckets of the first tier make a bucket of the second one
+        assertValues(chart, 0, 0, 3, 3, 4, 4, 5, 5, 6, 7, 8);
+        assertEquals(0, chart.changedSince(2));
+        assertEquals(1.5, rolling.averageAt(0, 0), 0);
+        assertEquals(-1.5, rolling.averageAt(1, 1), 0);
+        assertEquals(4.5, rolling.averageAt(0, 4), 0);
+        assertEquals(8, rolling.averageAt(0, 10), 0);
+    }
+
+    @Test public void extremesKeepTheirX() {
+        RollingChart rolling = new RollingChart(new String[] { "a", "b" }, new int[] { 0, 0 }, 4, new int[] { 4 }, new int[] { 2 });
+        Chart chart = rolling.chart;
+        rolling.append(0, 5, 0);
+        rolling.append(1, 9, 0);
+        rolling.append(2, 1, 8);
+        rolling.append(4, 4, 0);
+        rolling.append(5, 0, 0);
+        // a: max 9 at 1, min 1 at 2; b: min 0 at 0, max 8 at 2
+        double[] xs = { 0, 1, 2, 2, 5 };
+        double[] as = { 9, 9, 1, 1, 0 }; // a is the same before its first extreme
+        double[] bs = { 0, 4, 8, 8, 0 }; // b is interpolated between its extremes
+        assertEquals(xs.length, chart.x.values.size());
+        for (int i = 0; i < xs.length; i++) {
+            assertEquals(xs[i], chart.x.values.get(i), 0);
+            assertEquals(as[i], chart.columns[0].values.get(i), 0);
+            assertEquals(bs[i], chart.columns[1].values.get(i), 0);
+        }
+        assertEquals(0, chart.x.minValue, 0);
+        assertEquals(5, chart.x.maxValue, 0);
+        assertEquals(4.75, rolling.averageAt(0, 0), 0);
+    }
+
+    @Test public void dropsOldestAndKeepsBounds() {
+        RollingChart rolling = rollingChart();
+        Chart chart = rolling.chart;
+        for (int x = 0; x < 1000; x++) {
+            chart.append(x, x, -x); // goes to the rolling chart
+            int size = chart.x.values.size();
+            assertTrue(size <= 2 * 2 * 2 + 2 * 2 * 2 + 4);
+
+            double first = chart.x.values.get(0), last = chart.x.values.get(size - 1);
+            assertEquals(x, last, 0);
+            assertEquals(first, chart.x.minValue, 0);
+            assertEquals(last, chart.x.maxValue, 0);
+            assertEquals(first, chart.columns[0].minValue, 0);
+            assertEquals(last, chart.columns[0].maxValue, 0);
+            assertEquals(-last, chart.columns[1].minValue, 0);
+            assertEquals(-first, chart.columns[1].maxValue, 0);
+            for (int i = 0; i < size; i++) {
+                double v = chart.x.values.get(i);
+                assertEquals(v, chart.columns[0].values.get(i), 0);
+                assertEquals(-v, chart.columns[1].values.get(i), 0);
+                if (i > 0) assertTrue(v >= chart.x.values.get(i - 1));
+            }
+            assertEquals(size - 1, chart.columns[0].pyramid().maxIndex(0, size - 1));
+            assertEquals(size - 1, chart.columns[1].pyramid().minIndex(0, size - 1));
+        }
+    }
+
+    @Test public void pyramidsFollowRollUps() {
+        RollingChart rolling = new RollingChart(new String[] { "a" }, new int[] { 0 }, 40, new int[] { 8, 4 }, new int[] { 12, 6 });
+        Chart chart = rolling.chart;
+        Chart.Column column = chart.columns[0];
+        Random random = new Random(1);
+        for (int x = 0; x < 3000; x++) {
+            rolling.append(x, random.nextInt(1000));
+            if (x == 10) column.pyramid(); // then it is kept up to date
+            if (x % 7 == 0) {
+                int size = column.values.size();
+                double[] values = new double[size];
+                for (int i = 0; i < size; i++) values[i] = column.values.get(i);
+                for (int k = 0; k < 20; k++) {
+                    int from = random.nextInt(size), to = from + random.nextInt(size - from);
+                    double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+                    for (int i = from; i <= to; i++) {
+                        min = Math.min(min, values[i]);
+                        max = Math.max(max, values[i]);
+                    }
+                    assertEquals(min, values[column.pyramid().minIndex(from, to)], 0);
+                    assertEquals(max, values[column.pyramid().maxIndex(from, to)], 0);
+                }
+                double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+                for (double v : values) {
+                    min = Math.min(min, v);
+                    max = Math.max(max, v);
+                }
+                assertEquals(min, column.minValue, 0);
+                assertEquals(max, column.maxValue, 0);
+            }
+        }
+    }
+
+    @Test public void geometryRefillsChangedTail() {
+        RollingChart rolling = rollingChart();
+        Chart chart = rolling.chart;
+        ChartGeometry geometry = ChartGeometry.acquire(chart);
+        for (int x = 0; x < 200; x++) {
+            rolling.append(x * 10 + (x & 3), x, -x);
+            geometry.normalizeIfNeeded();
+            int size = chart.x.values.size();
+            double xMin = chart.x.minValue, xDiff = chart.x.maxValue - xMin;
+            for (int i = 0; i < size; i++) {
+                assertEquals((chart.x.values.get(i) - xMin) / xDiff, geometry.normalizedX(i), 1e-5);
+            }
+        }
+        geometry.release();
+    }
+
+    @Test(expected = IllegalArgumentException.class) public void decreasingX() {
+        RollingChart rolling = rollingChart();
+        rolling.append(2, 0, 0);
+        rolling.append(1, 0, 0);
+    }
+
+    private static void assertValues(Chart chart, double... xs) {
+        assertEquals(xs.length, chart.x.values.size());
+        for (int i = 0; i < xs.length; i++) {
+            assertEquals(xs[i], chart.x.values.get(i), 0);
+            assertEquals(xs[i], chart.columns[0].values.get(i), 0);
+            assertEquals(-xs[i], chart.columns[1].values.get(i), 0);
+        }
+    }
+
+}